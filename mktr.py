@@ -27,6 +27,9 @@ def main():
     parser.add_argument("--validate", help="Validate final POP", action='store_true')
     parser.add_argument("--verbose", help="Verbose mode", action='store_true')
     parser.add_argument("--count", help="Compute the final instantiation count", action='store_true')
+    parser.add_argument("--count-samples", help="Estimate the instantiation count from N samples instead of enumerating them", type=int)
+    parser.add_argument("--temp-root", help="Directory in which solver scratch directories are created (e.g. on tmpfs)", default=TEMP_DIR)
+    parser.add_argument("--threads", help="Number of candidate links tested at once, > 1 to test links ahead of the policy (default: 1)", type=int)
 
     args = parser.parse_args()
 
@@ -35,7 +38,7 @@ def main():
     print("Plan file:    {}".format(args.pfile))
     print("Treewidth:    {}".format(args.tw))
     print("Relaxation policy: {}".format(args.pol))
-    print("Temp dir:    {}".format(TEMP_DIR))
+    print("Temp dir:    {}".format(args.temp_root))
     print("Time limit:   {}m".format(args.time))
     print("Memory limit: 8GB")
     print("Validate: {}".format(args.validate))
@@ -56,13 +59,17 @@ def main():
         "--tw", args.tw,
         "--mktr-time", "{}".format(args.time),
         "--optimise",
-        "--temp", TEMP_DIR]
+        "--temp", args.temp_root]
     if args.validate:
         java_args.append("--validate")
     if args.verbose:
         java_args.append("--verbose")
     if args.count:
         java_args.append("--count")
+    if args.count_samples is not None:
+        java_args.extend(["--count-samples", str(args.count_samples)])
+    if args.threads is not None:
+        java_args.extend(["--threads", str(args.threads)])
 
     subprocess.call(java_args)
 
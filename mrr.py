@@ -3,6 +3,7 @@
 import argparse
 import shutil
 import subprocess
+import tempfile
 import time
 from pathlib import Path
 
@@ -10,7 +11,7 @@ JAVA_MAIN = "au.rmit.agtgrp.pplib.pp.mrr.MrrMain"
 JAVA_VM_ARGS = "-Xmx8G"
 JAVA_CLASSPATH = "./lib/pplib-0.1.2.jar:./lib/args4j-2.33.jar:./lib/libtw.jar:./lib/pddl4j-3.5.0.jar"
 
-TEMP_DIR = "./temp"
+TEMP_ROOT = "./temp"
 
 SEP = "************************************************"
 
@@ -26,7 +27,7 @@ RESULTS_HEADERS = [
     "domain_name", "problem_name", "plan_file", "alg", "acyc", "asymm",
     "time_limit", "enc_time", "prepro_time", "maxsat_time",
     "n_props", "n_clauses", "n_symm_props", "n_symm_clauses",
-    "maxsat_result", "pop_size", "pop_flex"]
+    "maxsat_result", "pop_size", "pop_flex", "maxsat_config"]
 
 
 def print_header(header: str):
@@ -42,16 +43,17 @@ def check_file(file_name: str, exit_on_no: bool = False) -> bool:
     return exists
 
 
-def make_dir(dir_name: str):
-    path = Path(dir_name)
-    if path.is_file():
-        print("{} is a file".format(dir_name))
+def make_temp_dir(root_name: str) -> str:
+    root = Path(root_name)
+    if root.is_file():
+        print("{} is a file".format(root_name))
         exit(1)
-    if Path(dir_name).is_dir():
-        shutil.rmtree(dir_name)
+    root.mkdir(parents=True, exist_ok=True)
 
+    # a fresh directory per run, so that concurrent runs can share the root
+    dir_name = tempfile.mkdtemp(prefix="mrr-", dir=root_name)
     print("Making directory: {}".format(dir_name))
-    path.mkdir(parents=True, exist_ok=True)
+    return dir_name
 
 
 def get_time_ms() -> int:
@@ -118,27 +120,59 @@ def main():
     parser.add_argument("--pfile", help="Plan file (eg problem_02.pddl.m)", required=True)
     parser.add_argument("--encoder", help="MaxSAT encoder", required=True, choices=["MD", "MR", "MR_OPSB", "MRD", "MRR", "MRR_OPSB", "MRR_CSSB"])
     parser.add_argument("--time", help="Time limit in minutes", type=float, default=30.0)
+    parser.add_argument("--wcnf-format", help="WCNF output format (MODERN requires MaxSAT Evaluation 2022+ tools)", choices=["LEGACY", "MODERN"], default="LEGACY")
     parser.add_argument("--verbose", help="Verbose mode", action='store_true')
+    parser.add_argument("--pipeline", help="Encode, solve and decode in a single JVM (no MaxSAT preprocessing)", action='store_true')
+    parser.add_argument("--out-file", help="Results file", default="mrr-results.csv")
+    parser.add_argument("--temp-root", help="Directory in which a temporary directory is created for this run (e.g. on tmpfs)", default=TEMP_ROOT)
+    parser.add_argument("--keep-temp", help="Do not delete the temporary directory on exit", action='store_true')
+    parser.add_argument("--acyclicity", help="Acyclicity encoding, overrides the encoder's default", choices=["ATOM", "BINARY", "SPARSE"])
+    parser.add_argument("--amo", help="At-most-one encoding of variable domains", choices=["PAIRWISE", "SEQUENTIAL", "COMMANDER", "PRODUCT"])
+    parser.add_argument("--simplify", help="Remove duplicate and subsumed clauses from the WCNF", action='store_true')
+    parser.add_argument("--max-neg-producers", help="Maximum number of initial state producers of each negative precondition (0 for no limit)", type=int, default=0)
+    parser.add_argument("--enc-cache", help="Directory in which encodings are cached and reused by later runs")
+    parser.add_argument("--maxsat-portfolio", help="';'-separated MaxSAT solver commands run in parallel in pipeline mode, {seconds} is replaced by the time limit")
 
     args = parser.parse_args()
 
+    temp_dir = make_temp_dir(args.temp_root)
+    try:
+        run(args, temp_dir)
+    finally:
+        if args.keep_temp:
+            print("Temp dir kept: {}".format(temp_dir))
+        else:
+            shutil.rmtree(temp_dir, ignore_errors=True)
+
+
+def run(args, temp_dir: str):
     domain_file = args.dfile
     problem_file = args.ifile
     plan_file = args.pfile
-    results_file = "mrr-results.csv"
+    results_file = args.out_file
     alg = args.encoder
     time_limit = args.time
     time_limit_ms = time_limit * 60000
     verbose = args.verbose
+    wcnf_format = args.wcnf_format
+    pipeline = args.pipeline
+    maxsat_portfolio = args.maxsat_portfolio
+    acyclicity = args.acyclicity
+    amo = args.amo
+    simplify = args.simplify
+    enc_cache = args.enc_cache
+    max_neg_producers = args.max_neg_producers
 
     print("Domain file:  {}".format(domain_file))
     print("Problem file: {}".format(problem_file))
     print("Plan file:    {}".format(plan_file))
     print("Results file: {}".format(results_file))
-    print("Temp dir:     {}".format(TEMP_DIR))
+    print("Temp dir:     {}".format(temp_dir))
     print("Optimisation alg:  {}".format(alg))
     print("Time limit:   {}m".format(time_limit))
+    print("WCNF format:  {}".format(wcnf_format))
     print("Verbose:  {}".format(verbose))
+    print("Pipeline: {}".format(pipeline))
 
     check_file(domain_file, exit_on_no=True)
     check_file(problem_file, exit_on_no=True)
@@ -146,13 +180,11 @@ def main():
         plan_file = plan_file.lower()
         check_file(plan_file, exit_on_no=True)
 
-    make_dir(TEMP_DIR)
-
-    wcnf_file = "{}/encoded.wcnf".format(TEMP_DIR)
-    pp_wcnf_file = "{}/preprocessed.wcnf".format(TEMP_DIR)
+    wcnf_file = "{}/encoded.wcnf".format(temp_dir)
+    pp_wcnf_file = "{}/preprocessed.wcnf".format(temp_dir)
     pp_map_file = "{}.map".format(pp_wcnf_file)
-    pp_wcnf_model = "{}/pp-model.dimacs".format(TEMP_DIR)
-    wcnf_model = "{}/model.dimacs".format(TEMP_DIR)
+    pp_wcnf_model = "{}/pp-model.dimacs".format(temp_dir)
+    wcnf_model = "{}/model.dimacs".format(temp_dir)
 
     maxsat_out = "{}/maxsat-preprocessor-out.log"
     pp_out = "{}/maxsat-solver-out.log"
@@ -162,11 +194,42 @@ def main():
         for header in RESULTS_HEADERS:
             f.write("{}, ".format(header))
         f.write("\n")
-        f.write("{},{},{}.{},{},{},{},{},{},{},{},{},{},{},{},{},{}\n".format(
+        f.write("{},{},{}.{},{},{},{},{},{},{},{},{},{},{},{},{},{},{}\n".format(
             domain_file, problem_file, plan_file, alg, " ", " ",
             int(time_limit_ms), 0, 0, 0, 
             -1, -1, -1, -1, 
-            ENCODING_ERR, -1, -1))
+            ENCODING_ERR, -1, -1, ""))
+
+    if pipeline:
+        print_header("Running MRR pipeline")
+        args = ["java", JAVA_VM_ARGS, "-cp", JAVA_CLASSPATH, JAVA_MAIN,
+                "--time", "{}".format(time_limit),
+                "--domain", domain_file,
+                "--problem", problem_file,
+                "--plan", plan_file,
+                "--pipeline",
+                "--out-file", results_file,
+                "--wcnf-format", wcnf_format,
+                "--temp", temp_dir,
+                "--alg", alg]
+        if acyclicity:
+            args += ["--acyclicity", acyclicity]
+        if amo:
+            args += ["--amo", amo]
+        if simplify:
+            args.append("--simplify")
+        if max_neg_producers:
+            args += ["--max-neg-producers", str(max_neg_producers)]
+        if enc_cache:
+            args += ["--enc-cache", enc_cache]
+        if maxsat_portfolio:
+            args += ["--maxsat-portfolio", maxsat_portfolio]
+        if verbose:
+            args.append("--verbose")
+
+        subprocess.call(args)
+        print("Results written to {}".format(results_file))
+        return
 
     #
     # encode WCNF
@@ -181,7 +244,18 @@ def main():
             "--encode",
             "--out-file", results_file,
             "--wcnf-file", wcnf_file,
+            "--wcnf-format", wcnf_format,
             "--alg", alg]
+    if acyclicity:
+        args += ["--acyclicity", acyclicity]
+    if amo:
+        args += ["--amo", amo]
+    if simplify:
+        args.append("--simplify")
+    if max_neg_producers:
+        args += ["--max-neg-producers", str(max_neg_producers)]
+    if enc_cache:
+        args += ["--enc-cache", enc_cache]
     if verbose:
         args.append("--verbose")
 
@@ -287,7 +361,8 @@ def main():
             "--decode",
             "--model-file", wcnf_model,
             "--out-file", results_file,
-            "--wcnf-file", wcnf_file]
+            "--wcnf-file", wcnf_file,
+            "--wcnf-format", wcnf_format]
     if verbose:
         args.append("--verbose")
 
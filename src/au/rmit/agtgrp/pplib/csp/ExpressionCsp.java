@@ -48,6 +48,11 @@ public class ExpressionCsp implements Csp<Expression<Variable>> {
 	protected Map<Variable, Set<Constant>> varDomains;
 	protected Map<List<Variable>, List<Expression<Variable>>> constraints;
 
+	// built when first requested, then kept up to date as the CSP changes
+	private transient UndirectedGraph<Variable> primalGraph;
+	// the number of scopes in the primal graph which contain each pair of variables
+	private transient Map<Variable, Map<Variable, Integer>> scopeCounts;
+
 	public ExpressionCsp() {
 		vars = new ArrayList<Variable>();
 		domain = new ArrayList<Constant>();
@@ -55,6 +60,27 @@ public class ExpressionCsp implements Csp<Expression<Variable>> {
 		constraints = new HashMap<List<Variable>, List<Expression<Variable>>>();
 	}
 
+	/**
+	 * A copy of csp, which can have constraints added and removed without
+	 * changing csp. Variables, constants and constraints are shared.
+	 */
+	public ExpressionCsp(ExpressionCsp csp) {
+		vars = new ArrayList<Variable>(csp.vars);
+		domain = new ArrayList<Constant>(csp.domain);
+		varDomains = new HashMap<Variable, Set<Constant>>();
+		for (Map.Entry<Variable, Set<Constant>> entry : csp.varDomains.entrySet())
+			varDomains.put(entry.getKey(), new HashSet<Constant>(entry.getValue()));
+		constraints = new HashMap<List<Variable>, List<Expression<Variable>>>();
+		for (Map.Entry<List<Variable>, List<Expression<Variable>>> entry : csp.constraints.entrySet())
+			constraints.put(entry.getKey(), new ArrayList<Expression<Variable>>(entry.getValue()));
+		if (csp.primalGraph != null) {
+			primalGraph = new UndirectedGraph<Variable>(csp.primalGraph);
+			scopeCounts = new HashMap<Variable, Map<Variable, Integer>>();
+			for (Map.Entry<Variable, Map<Variable, Integer>> entry : csp.scopeCounts.entrySet())
+				scopeCounts.put(entry.getKey(), new HashMap<Variable, Integer>(entry.getValue()));
+		}
+	}
+
 	@Override
 	public void addVariable(Variable v) {
 		if (v == null)
@@ -92,6 +118,7 @@ public class ExpressionCsp implements Csp<Expression<Variable>> {
 		}
 		Collections.sort(domain, Comparators.SYMBOL_COMPARATOR);
 		List<Expression<Variable>> cons = constraints.get(domain);
+		boolean wasPrimal = isPrimalScope(cons);
 
 		if (cons == null) {
 			cons = new ArrayList<Expression<Variable>>();
@@ -99,6 +126,7 @@ public class ExpressionCsp implements Csp<Expression<Variable>> {
 		}
 
 		cons.add(con);
+		updatePrimalGraph(domain, wasPrimal);
 
 	}
 
@@ -124,20 +152,70 @@ public class ExpressionCsp implements Csp<Expression<Variable>> {
 
 		vars = new ArrayList<Variable>(vars);
 		Collections.sort(vars, Comparators.SYMBOL_COMPARATOR);
+		boolean wasPrimal = isPrimalScope(constraints.get(vars));
 
 		if (!constraints.containsKey(vars))
 			constraints.put(vars, new ArrayList<Expression<Variable>>());
 
-		for (Expression<Variable> con : cons) {
-			Set<Variable> domain = con.getDomain();
-			if (!domain.containsAll(vars) || domain.size() != vars.size())
-				throw new IllegalArgumentException("Variables != domain of constraint");
+		try {
+			for (Expression<Variable> con : cons) {
+				Set<Variable> domain = con.getDomain();
+				if (!domain.containsAll(vars) || domain.size() != vars.size())
+					throw new IllegalArgumentException("Variables != domain of constraint");
 
-			if (!constraints.get(vars).contains(con))
-				constraints.get(vars).add(con);
+				if (!constraints.get(vars).contains(con))
+					constraints.get(vars).add(con);
+			}
+		} finally {
+			updatePrimalGraph(vars, wasPrimal);
 		}
 	}
 
+	/**
+	 * Removes a constraint added with addConstraint, returning false if it is not in the CSP.
+	 */
+	public boolean removeConstraint(Expression<Variable> con) {
+		List<Variable> domain = new ArrayList<Variable>(con.getDomain());
+		Collections.sort(domain, Comparators.SYMBOL_COMPARATOR);
+		List<Expression<Variable>> cons = constraints.get(domain);
+		boolean wasPrimal = isPrimalScope(cons);
+		if (cons == null || !cons.remove(con))
+			return false;
+
+		if (cons.isEmpty())
+			constraints.remove(domain);
+		updatePrimalGraph(domain, wasPrimal);
+		return true;
+	}
+
+	/**
+	 * Removes the constraints over vars, returning them, or null if there are none.
+	 */
+	public List<Expression<Variable>> removeConstraints(List<Variable> vars) {
+		vars = new ArrayList<Variable>(vars);
+		Collections.sort(vars, Comparators.SYMBOL_COMPARATOR);
+		List<Expression<Variable>> cons = constraints.remove(vars);
+		if (cons != null)
+			updatePrimalGraph(vars, isPrimalScope(cons));
+		return cons;
+	}
+
+	/**
+	 * Removes all variables, domain values and constraints.
+	 */
+	public void clear() {
+		vars.clear();
+		domain.clear();
+		varDomains.clear();
+		constraints.clear();
+		primalGraph = null;
+		scopeCounts = null;
+	}
+
+	/**
+	 * Returns the constraints by scope. The map and lists must not be
+	 * modified, as the primal graph would not be updated.
+	 */
 	@Override
 	public Map<List<Variable>, List<Expression<Variable>>> getConstraints() {
 		return constraints;
@@ -168,17 +246,23 @@ public class ExpressionCsp implements Csp<Expression<Variable>> {
 	public void addDomainValue(Variable var, Constant dv) {
 		addDomainValue(dv);
 		addVariable(var);
+		boolean wasUsable = isPrimalVariable(var);
 		if (!varDomains.get(var).contains(dv))
 			varDomains.get(var).add(dv);
+		if (!wasUsable)
+			updatePrimalGraph(var);
 	}
 
 	public void addDomainValues(Variable var, Collection<Constant> dvs) {
 		addDomainValues(dvs);
 		addVariable(var);
+		boolean wasUsable = isPrimalVariable(var);
 		for (Constant dv : dvs) {
 			if (!varDomains.get(var).contains(dv))
 				varDomains.get(var).add(dv);
 		}
+		if (!wasUsable)
+			updatePrimalGraph(var);
 	}
 
 	@Override
@@ -196,43 +280,96 @@ public class ExpressionCsp implements Csp<Expression<Variable>> {
 		return varDomains;
 	}
 
+	/**
+	 * Returns the primal graph, which is kept up to date as the CSP changes, so
+	 * must not be modified.
+	 */
 	@Override
 	public UndirectedGraph<Variable> getPrimalGraph() {
-		UndirectedGraph<Variable> primalGraph = new UndirectedGraph<Variable>();
-
-		// all vars with domain size > 1
-		Set<Variable> usableVars = new HashSet<Variable>();
-		for (Variable var : vars) {
-			if (varDomains.get(var).size() > 1)
-				usableVars.add(var);
+		if (primalGraph == null) {
+			primalGraph = new UndirectedGraph<Variable>();
+			scopeCounts = new HashMap<Variable, Map<Variable, Integer>>();
+			for (Map.Entry<List<Variable>, List<Expression<Variable>>> entry : constraints.entrySet()) {
+				if (isPrimalScope(entry.getValue()))
+					countScope(entry.getKey(), 1);
+			}
 		}
+		return primalGraph;
+	}
 
-		for (List<Variable> domain : constraints.keySet()) {
-			// just in case
-			List<Expression<Variable>> cons = constraints.get(domain);
-			if (cons.size() == 1 && 
+	// all-different constraints on their own are not in the primal graph, just in case
+	private static boolean isPrimalScope(List<Expression<Variable>> cons) {
+		if (cons == null || cons.isEmpty())
+			return false;
+		return !(cons.size() == 1 && 
 				cons.get(0).isLiteral() && 
-				AllDifferent.isAllDifferentLiteral(cons.get(0).getLiteral())) {
-				continue;
-			}
-			
-			if (!cons.isEmpty()) {
-				// filter those with domain size <= 1
-				List<Variable> filtered = new ArrayList<Variable>(domain);
-				filtered.retainAll(usableVars);
+				AllDifferent.isAllDifferentLiteral(cons.get(0).getLiteral()));
+	}
 
-				for (int i = 0; i < filtered.size(); i++) {
-					for (int j = i + 1; j < filtered.size(); j++) {
+	// vars with domain size <= 1 are not in the primal graph
+	private boolean isPrimalVariable(Variable var) {
+		return varDomains.get(var).size() > 1;
+	}
 
-						Variable v1 = filtered.get(i);
-						Variable v2 = filtered.get(j);
+	private void updatePrimalGraph(List<Variable> scope, boolean wasPrimal) {
+		if (primalGraph == null)
+			return;
 
-						primalGraph.addEdge(v1, v2);
-					}
+		boolean isPrimal = isPrimalScope(constraints.get(scope));
+		if (isPrimal != wasPrimal)
+			countScope(scope, isPrimal ? 1 : -1);
+	}
+
+	// var may now be in the primal graph
+	private void updatePrimalGraph(Variable var) {
+		if (primalGraph == null || !isPrimalVariable(var) || !scopeCounts.containsKey(var))
+			return;
+
+		for (Variable other : scopeCounts.get(var).keySet()) {
+			if (isPrimalVariable(other))
+				primalGraph.addEdge(var, other);
+		}
+	}
+
+	private void countScope(List<Variable> scope, int n) {
+		for (int i = 0; i < scope.size(); i++) {
+			for (int j = i + 1; j < scope.size(); j++) {
+				Variable v1 = scope.get(i);
+				Variable v2 = scope.get(j);
+				int count = addScopeCount(v1, v2, n);
+				addScopeCount(v2, v1, n);
+
+				if (!isPrimalVariable(v1) || !isPrimalVariable(v2))
+					continue;
+				if (count == 0) {
+					primalGraph.removeEdge(v1, v2);
+					if (primalGraph.getLinksFrom(v1).isEmpty())
+						primalGraph.removeVertex(v1);
+					if (primalGraph.getLinksFrom(v2).isEmpty())
+						primalGraph.removeVertex(v2);
 				}
+				else
+					primalGraph.addEdge(v1, v2);
 			}
 		}
-		return primalGraph;
+	}
+
+	private int addScopeCount(Variable v1, Variable v2, int n) {
+		Map<Variable, Integer> counts = scopeCounts.get(v1);
+		if (counts == null) {
+			counts = new HashMap<Variable, Integer>();
+			scopeCounts.put(v1, counts);
+		}
+		Integer count = counts.get(v2);
+		int newCount = (count == null ? 0 : count) + n;
+		if (newCount == 0) {
+			counts.remove(v2);
+			if (counts.isEmpty())
+				scopeCounts.remove(v1);
+		}
+		else
+			counts.put(v2, newCount);
+		return newCount;
 	}
 
 	public UndirectedGraph<List<Variable>> getDualGraph() {
@@ -88,12 +88,8 @@ public class PartitionedExpressionCsp extends ExpressionCsp {
 			pcsp.addDomainValues(var, domains.get(var));
 
 		Substitution<Variable> id = Substitution.identity(sub.getDomain());
-		for (List<Variable> domain : csp.getConstraints().keySet()) {
-			Iterator<Expression<Variable>> consIt = csp.getConstraints().get(domain).iterator();
-
-			while (consIt.hasNext()) {
-				Expression<Variable> cons = consIt.next(); // remove to save memory
-				consIt.remove();
+		for (List<Variable> domain : new ArrayList<List<Variable>>(csp.getConstraints().keySet())) {
+			for (Expression<Variable> cons : csp.removeConstraints(domain)) { // remove to save memory
 				cons = cons.resetVariables(sub).applySubstitution(id);
 				pcsp.addConstraint(cons);
 			}
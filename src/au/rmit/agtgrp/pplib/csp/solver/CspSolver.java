@@ -21,6 +21,7 @@
 package au.rmit.agtgrp.pplib.csp.solver;
 
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -30,15 +31,17 @@ import au.rmit.agtgrp.pplib.csp.Csp;
 import au.rmit.agtgrp.pplib.csp.ExpressionCsp;
 import au.rmit.agtgrp.pplib.csp.solver.output.CachedCspOutputSet;
 import au.rmit.agtgrp.pplib.csp.solver.output.CspOutputSet;
+import au.rmit.agtgrp.pplib.utils.ScratchDir;
 
-public abstract class CspSolver {
-
-	private static int COUNTER = 0;
+public abstract class CspSolver implements Closeable {
 
+	/** Default parent of the per-solver scratch directories. */
 	public static File TEMP_DIR = new File("temp");
 	
 	protected ZincFormatter zf;
-	protected final File tempCspFile;
+	protected File tempDir;
+	private ScratchDir scratch;
+	private int solnsCounter;
 
 	protected ExpressionCsp csp;
 	protected File cspFile;
@@ -47,16 +50,47 @@ public abstract class CspSolver {
 	protected boolean verbose;
 	
 	public CspSolver() {
-		tempCspFile = new File(TEMP_DIR, "temp_csp.mzn");
+		tempDir = TEMP_DIR;
+		scratch = null;
+		solnsCounter = 0;
 		verbose = false;
 	}
+	
+	/**
+	 * Sets the directory under which this solver creates its scratch directory.
+	 * Only affects solvers that have not yet run.
+	 */
+	public void setTempDir(File tempDir) {
+		this.tempDir = tempDir;
+	}
+	
+	/**
+	 * This solver's own working directory, created on first use. It is deleted
+	 * by close(), or when the JVM exits.
+	 */
+	protected synchronized File getScratchDir() {
+		if (scratch == null)
+			scratch = ScratchDir.create(tempDir, "csp-");
+		return scratch.getDir();
+	}
+	
+	/**
+	 * Deletes the scratch directory, including any solution files written to it.
+	 */
+	@Override
+	public synchronized void close() {
+		if (scratch != null) {
+			scratch.close();
+			scratch = null;
+		}
+	}
 
 	public void setVerbose(boolean verbose) {
 		this.verbose = verbose;
 	}
 	
 	private File getInternalSolnsFile() {
-		return new File(TEMP_DIR, "sols_" + COUNTER++ + ".subs");
+		return new File(getScratchDir(), "sols_" + solnsCounter++ + ".subs");
 	}
 
 	public CspSolutionSet getSolutions() {
@@ -149,6 +183,7 @@ public abstract class CspSolver {
 
 	public void solve(ExpressionCsp csp, int nsols, File solnsFile, long timeout, int nthreads) throws InterruptedException {
 
+		File tempCspFile = new File(getScratchDir(), "temp_csp.mzn");
 		this.csp = csp;
 		this.solnsFile = solnsFile;
 		this.cspFile = tempCspFile;
@@ -25,6 +25,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -99,6 +101,17 @@ public class GeCodeInterface extends CspSolver {
 
 	public void execute(File mzn, int nsols, File output, long timeout, int nthreads) throws InterruptedException {
 
+		// mzn2fzn writes its output next to its input, so work on a copy in the scratch dir
+		if (!getScratchDir().getAbsoluteFile().equals(mzn.getAbsoluteFile().getParentFile())) {
+			File copy = new File(getScratchDir(), mzn.getName());
+			try {
+				Files.copy(mzn.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			mzn = copy;
+		}
+
 		// this is a short-running process, always execute in its entirety even if cancelled
 		synchronized(this) {
 			mzn2fzn(mzn);
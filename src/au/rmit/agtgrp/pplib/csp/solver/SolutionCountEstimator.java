@@ -0,0 +1,390 @@
+/*******************************************************************************
+ * MKTR - Minimal k-Treewidth Relaxation
+ *
+ * Copyright (C) 2018 
+ * Max Waters (max.waters@rmit.edu.au)
+ * RMIT University, Melbourne VIC 3000
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package au.rmit.agtgrp.pplib.csp.solver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import au.rmit.agtgrp.pplib.csp.ExpressionCsp;
+import au.rmit.agtgrp.pplib.csp.alldiff.AllDifferent;
+import au.rmit.agtgrp.pplib.fol.expression.Connective;
+import au.rmit.agtgrp.pplib.fol.expression.Expression;
+import au.rmit.agtgrp.pplib.fol.function.Constant;
+import au.rmit.agtgrp.pplib.fol.predicate.Literal;
+import au.rmit.agtgrp.pplib.fol.predicate.Predicate;
+import au.rmit.agtgrp.pplib.fol.symbol.Variable;
+import au.rmit.agtgrp.pplib.utils.collections.graph.UndirectedGraph;
+
+/**
+ * Estimates the number of solutions of a CSP without enumerating them, by
+ * random probing of the search tree (Knuth, 1975). Each probe assigns the
+ * variables in a fixed order, each to a value chosen uniformly from those
+ * consistent with the constraints whose variables are all assigned, and
+ * returns the product of the number of values at each step, or 0 at a dead
+ * end. The mean of the probes is an unbiased estimate of the number of
+ * solutions, and their standard error gives a confidence interval.
+ */
+public class SolutionCountEstimator {
+
+	public static final long DEFAULT_SEED = 0;
+
+	// 95% confidence
+	private static final double Z = 1.96;
+
+	private final Random random;
+
+	private volatile boolean cancelled;
+
+	private double estimate;
+	private double lowerBound;
+	private double upperBound;
+	private int nSamples;
+	private boolean timedOut;
+	private long runtime;
+
+	// the probe: variables to assign, in order, their domains and the constraints checked once each is assigned
+	private int[] order;
+	private int[][] domains;
+	private Constraint[][] checks;
+	private int[] values;
+	private int[] consistent;
+
+	public SolutionCountEstimator() {
+		this(DEFAULT_SEED);
+	}
+
+	public SolutionCountEstimator(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 * Estimates the number of solutions of csp from at most maxSamples
+	 * probes, stopping early after timeout milliseconds, if timeout > 0.
+	 */
+	public void estimate(ExpressionCsp csp, int maxSamples, long timeout) throws InterruptedException {
+		cancelled = false;
+		timedOut = false;
+		long start = System.currentTimeMillis();
+
+		boolean satisfiable = init(csp);
+
+		// Welford's method, as the sum of squares can be huge
+		double mean = 0;
+		double m2 = 0;
+		int n = 0;
+		while (n < maxSamples) {
+			if (cancelled || Thread.interrupted()) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedException();
+			}
+			if (timeout > 0 && System.currentTimeMillis() - start > timeout) {
+				timedOut = true;
+				break;
+			}
+
+			double x = satisfiable ? probe() : 0;
+			n++;
+			double delta = x - mean;
+			mean+=delta / n;
+			m2+=delta * (x - mean);
+		}
+
+		double stdErr = n > 1 ? Math.sqrt(m2 / (n - 1) / n) : Double.POSITIVE_INFINITY;
+		estimate = mean;
+		lowerBound = Math.max(0, mean - Z * stdErr);
+		upperBound = mean + Z * stdErr;
+		nSamples = n;
+		runtime = System.currentTimeMillis() - start;
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public double getEstimate() {
+		return estimate;
+	}
+
+	/**
+	 * The lower bound of the 95% confidence interval of the estimate.
+	 */
+	public double getLowerBound() {
+		return lowerBound;
+	}
+
+	/**
+	 * The upper bound of the 95% confidence interval of the estimate.
+	 */
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+	public int getSampleCount() {
+		return nSamples;
+	}
+
+	public boolean timedOut() {
+		return timedOut;
+	}
+
+	public long getRuntime() {
+		return runtime;
+	}
+
+	private double probe() {
+		double weight = 1;
+		for (int i = 0; i < order.length; i++) {
+			int var = order[i];
+			int n = 0;
+			for (int value : domains[i]) {
+				values[var] = value;
+				if (isSatisfied(checks[i]))
+					consistent[n++] = value;
+			}
+			if (n == 0)
+				return 0;
+
+			values[var] = consistent[random.nextInt(n)];
+			weight*=n;
+		}
+		return weight;
+	}
+
+	private boolean isSatisfied(Constraint[] constraints) {
+		for (Constraint con : constraints) {
+			if (!con.isSatisfied(values))
+				return false;
+		}
+		return true;
+	}
+
+	// returns false if a constraint over fixed variables is violated
+	private boolean init(ExpressionCsp csp) {
+		ZincFormatter zf = new ZincFormatter(csp);
+
+		// variables with one value are fixed, the rest are assigned in order
+		Map<Variable, Integer> ids = new HashMap<Variable, Integer>();
+		List<Variable> free = new ArrayList<Variable>();
+		values = new int[csp.getVariables().size()];
+		for (Variable var : zf.getVariablesInOrder()) {
+			ids.put(var, ids.size());
+			Set<Constant> domain = csp.getDomain(var);
+			if (domain.size() == 1)
+				values[ids.get(var)] = zf.getIndexofObject(domain.iterator().next());
+			else
+				free.add(var);
+		}
+
+		List<Variable> ordered = getOrder(free, csp.getPrimalGraph());
+		Map<Variable, Integer> positions = new HashMap<Variable, Integer>();
+		order = new int[ordered.size()];
+		domains = new int[ordered.size()][];
+		int maxDomainSize = 0;
+		for (int i = 0; i < ordered.size(); i++) {
+			Variable var = ordered.get(i);
+			positions.put(var, i);
+			order[i] = ids.get(var);
+			Set<Constant> domain = csp.getDomain(var);
+			domains[i] = new int[domain.size()];
+			int j = 0;
+			for (Constant c : domain)
+				domains[i][j++] = zf.getIndexofObject(c);
+			maxDomainSize = Math.max(maxDomainSize, domain.size());
+		}
+		consistent = new int[maxDomainSize];
+
+		// check each constraint once its last variable is assigned
+		List<List<Constraint>> checkLists = new ArrayList<List<Constraint>>();
+		for (int i = 0; i < order.length; i++)
+			checkLists.add(new ArrayList<Constraint>());
+		List<Constraint> fixedChecks = new ArrayList<Constraint>();
+
+		for (List<Expression<Variable>> cons : csp.getConstraints().values()) {
+			for (Expression<Variable> con : cons) {
+				for (Expression<Variable> part : split(con)) {
+					int last = -1;
+					for (Variable var : part.getDomain()) {
+						Integer pos = positions.get(var);
+						if (pos != null)
+							last = Math.max(last, pos);
+					}
+					Constraint compiled = compile(part, ids);
+					if (last < 0)
+						fixedChecks.add(compiled);
+					else
+						checkLists.get(last).add(compiled);
+				}
+			}
+		}
+
+		checks = new Constraint[order.length][];
+		for (int i = 0; i < order.length; i++)
+			checks[i] = checkLists.get(i).toArray(new Constraint[0]);
+
+		for (Constraint con : fixedChecks) {
+			if (!con.isSatisfied(values))
+				return false;
+		}
+		return true;
+	}
+
+	// each variable in turn has the most neighbours already ordered, so constraints are checked early
+	private static List<Variable> getOrder(List<Variable> vars, UndirectedGraph<Variable> primalGraph) {
+		List<Variable> ordered = new ArrayList<Variable>();
+		Set<Variable> remaining = new HashSet<Variable>(vars);
+		Map<Variable, Integer> nOrdered = new HashMap<Variable, Integer>();
+		for (Variable var : vars)
+			nOrdered.put(var, 0);
+
+		while (!remaining.isEmpty()) {
+			Variable best = null;
+			for (Variable var : vars) {
+				if (!remaining.contains(var))
+					continue;
+				if (best == null || nOrdered.get(var) > nOrdered.get(best)
+						|| (nOrdered.get(var).equals(nOrdered.get(best)) && primalGraph.getLinksFrom(var).size() > primalGraph.getLinksFrom(best).size()))
+					best = var;
+			}
+
+			ordered.add(best);
+			remaining.remove(best);
+			for (Variable link : primalGraph.getLinksFrom(best)) {
+				if (remaining.contains(link))
+					nOrdered.put(link, nOrdered.get(link) + 1);
+			}
+		}
+		return ordered;
+	}
+
+	// conjunctions and all-different constraints are split, so each part is checked as early as possible
+	private static List<Expression<Variable>> split(Expression<Variable> con) {
+		List<Expression<Variable>> parts = new ArrayList<Expression<Variable>>();
+		if (!con.isLiteral() && con.getConnective() == Connective.AND) {
+			for (Expression<Variable> sub : con.getSubexpressions())
+				parts.addAll(split(sub));
+		}
+		else if (con.isLiteral() && con.getLiteral().getValue() && AllDifferent.isAllDifferentLiteral(con.getLiteral())) {
+			List<Variable> vars = con.getLiteral().getAtom().getParameters();
+			for (int i = 0; i < vars.size(); i++) {
+				for (int j = i + 1; j < vars.size(); j++)
+					parts.add(Expression.buildLiteral(Literal.equals(vars.get(i), vars.get(j), false)));
+			}
+		}
+		else
+			parts.add(con);
+		return parts;
+	}
+
+	private static Constraint compile(Expression<Variable> con, Map<Variable, Integer> ids) {
+		if (!con.isLiteral()) {
+			List<Expression<Variable>> subexps = con.getSubexpressions();
+			Constraint[] subs = new Constraint[subexps.size()];
+			for (int i = 0; i < subs.length; i++)
+				subs[i] = compile(subexps.get(i), ids);
+			return new Constraint(con.getConnective(), subs, null, true, null);
+		}
+
+		Literal<Variable> lit = con.getLiteral();
+		Predicate predicate = lit.getAtom().getSymbol();
+		if (!predicate.equals(Predicate.EQUALS) && !predicate.equals(Predicate.PREC) && !predicate.equals(Predicate.TRUE)
+				&& !predicate.getName().equals(AllDifferent.ALL_DIFF_PREDICATE_NAME))
+			throw new IllegalArgumentException("Cannot handle literal: " + lit);
+
+		List<Variable> params = lit.getAtom().getParameters();
+		int[] args = new int[params.size()];
+		for (int i = 0; i < args.length; i++)
+			args[i] = ids.get(params.get(i));
+		return new Constraint(null, null, predicate, lit.getValue(), args);
+	}
+
+	// a constraint over the indices of variables, evaluated on the values of the ZincFormatter's objects
+	private static class Constraint {
+
+		final Connective connective; // null for literals
+		final Constraint[] subs;
+		final Predicate predicate;
+		final boolean value;
+		final int[] args;
+
+		Constraint(Connective connective, Constraint[] subs, Predicate predicate, boolean value, int[] args) {
+			this.connective = connective;
+			this.subs = subs;
+			this.predicate = predicate;
+			this.value = value;
+			this.args = args;
+		}
+
+		boolean isSatisfied(int[] values) {
+			if (connective == null)
+				return isLiteralSatisfied(values) == value;
+
+			switch (connective) {
+			case AND:
+				for (Constraint sub : subs) {
+					if (!sub.isSatisfied(values))
+						return false;
+				}
+				return true;
+			case OR:
+				for (Constraint sub : subs) {
+					if (sub.isSatisfied(values))
+						return true;
+				}
+				return false;
+			case IMPL:
+				return isImplicationSatisfied(values, 0);
+			case NOT:
+				return !subs[0].isSatisfied(values);
+			}
+			throw new IllegalArgumentException("Unknown connective: " + connective);
+		}
+
+		// a -> (b -> c)
+		private boolean isImplicationSatisfied(int[] values, int i) {
+			if (i == subs.length - 1)
+				return subs[i].isSatisfied(values);
+			return !subs[i].isSatisfied(values) || isImplicationSatisfied(values, i + 1);
+		}
+
+		private boolean isLiteralSatisfied(int[] values) {
+			if (predicate.equals(Predicate.EQUALS))
+				return values[args[0]] == values[args[1]];
+			if (predicate.equals(Predicate.PREC))
+				return values[args[0]] < values[args[1]];
+			if (predicate.equals(Predicate.TRUE))
+				return true;
+
+			// all different
+			Set<Integer> seen = new HashSet<Integer>();
+			for (int arg : args) {
+				if (!seen.add(values[arg]))
+					return false;
+			}
+			return true;
+		}
+	}
+
+}
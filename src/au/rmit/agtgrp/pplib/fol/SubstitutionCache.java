@@ -0,0 +1,98 @@
+package au.rmit.agtgrp.pplib.fol;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.rmit.agtgrp.pplib.fol.function.Constant;
+import au.rmit.agtgrp.pplib.fol.symbol.Term;
+import au.rmit.agtgrp.pplib.fol.symbol.Variable;
+
+/**
+ * A bounded, least recently used cache of the results of applying
+ * substitutions to immutable objects, such as operators and expressions.
+ * Results are keyed by the identity of the object and the values the
+ * substitution gives its variables, so applying any substitution which agrees
+ * on those variables returns the same instance.
+ */
+public class SubstitutionCache<S, R> {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private final Map<Key, R> cache;
+
+	public SubstitutionCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public SubstitutionCache(final int capacity) {
+		cache = new LinkedHashMap<Key, R>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, R> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * The key of source under sub, where the result only depends on the values
+	 * of the variables in varLists. Constants are their own values.
+	 */
+	public Object getKey(S source, Substitution<?> sub, List<?> ... varLists) {
+		int n = 0;
+		for (List<?> vars : varLists)
+			n+=vars.size();
+
+		Term[] values = new Term[n];
+		int i = 0;
+		for (List<?> vars : varLists) {
+			for (Object var : vars)
+				values[i++] = var instanceof Constant ? (Term) var : sub.apply((Variable) var);
+		}
+		return new Key(source, values);
+	}
+
+	public synchronized R get(Object key) {
+		return cache.get(key);
+	}
+
+	public synchronized void put(Object key, R result) {
+		cache.put((Key) key, result);
+	}
+
+	public synchronized void clear() {
+		cache.clear();
+	}
+
+	private static class Key {
+
+		private final Object source;
+		private final Term[] values;
+		private final int hashCode;
+
+		private Key(Object source, Term[] values) {
+			this.source = source;
+			this.values = values;
+			hashCode = 31 * System.identityHashCode(source) + Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return source == other.source && Arrays.equals(values, other.values);
+		}
+	}
+
+}
@@ -25,10 +25,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 import au.rmit.agtgrp.pplib.fol.Substitution;
+import au.rmit.agtgrp.pplib.fol.SubstitutionCache;
 import au.rmit.agtgrp.pplib.fol.predicate.Literal;
 import au.rmit.agtgrp.pplib.fol.symbol.Term;
 import au.rmit.agtgrp.pplib.fol.symbol.Variable;
@@ -39,6 +41,8 @@ public class Expression<T extends Term> implements Serializable {
 	private static final long serialVersionUID = 1L;
 	
 	private static final ObjectCache<Expression<?>> CACHE = new ObjectCache<Expression<?>>();
+
+	private static final SubstitutionCache<Expression<?>, Expression<?>> GROUNDINGS = new SubstitutionCache<Expression<?>, Expression<?>>();
 	
 	public static Expression<Variable> TRUE = Expression.buildLiteral(Literal.TRUE);
 	public static Expression<Variable> FALSE = Expression.buildLiteral(Literal.FALSE);
@@ -135,6 +139,7 @@ public class Expression<T extends Term> implements Serializable {
 
 	private Set<Literal<T>> literals;
 	private Set<T> domain;
+	private List<Variable> variables;
 
 	private final int hashCode;
 
@@ -216,13 +221,38 @@ public class Expression<T extends Term> implements Serializable {
 		return literals;
 	}
 
+	public List<Variable> getVariables() {
+		if (variables == null) {
+			Set<Variable> varSet = new LinkedHashSet<Variable>();
+			if (this.isLiteral())
+				varSet.addAll(literal.getAtom().getVariables());
+			else {
+				for (Expression<T> exp : subexpressions)
+					varSet.addAll(exp.getVariables());
+			}
+			variables = new ArrayList<Variable>(varSet);
+		}
+		return variables;
+	}
+
 	public <V extends Term> Expression<V> applySubstitution(Substitution<V> sub) {
+		Object key = GROUNDINGS.getKey(this, sub, getVariables());
+		@SuppressWarnings("unchecked")
+		Expression<V> exp = (Expression<V>) GROUNDINGS.get(key);
+		if (exp == null) {
+			exp = buildSubstitution(sub);
+			GROUNDINGS.put(key, exp);
+		}
+		return exp;
+	}
+
+	private <V extends Term> Expression<V> buildSubstitution(Substitution<V> sub) {
 		if (this.isLiteral())
 			return Expression.buildLiteral(literal.applySubstitution(sub));
 		else {
 			List<Expression<V>> renamedSubs = new ArrayList<Expression<V>>();
 			for (Expression<T> subexp : subexpressions)
-				renamedSubs.add(subexp.applySubstitution(sub));
+				renamedSubs.add(subexp.buildSubstitution(sub));
 
 			return Expression.buildExpression(connective, renamedSubs);
 		}
@@ -242,6 +272,14 @@ public class Expression<T extends Term> implements Serializable {
 		}
 	}
 
+	/**
+	 *  Use this method when loading a new domain into the same JVM.
+	 */
+	public static void clearCache() {
+		CACHE.clear();
+		GROUNDINGS.clear();
+	}
+
 	public Expression<T> intern() {
 		return CACHE.get(this);
 	}
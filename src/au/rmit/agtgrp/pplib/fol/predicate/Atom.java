@@ -124,6 +124,13 @@ public class Atom<T extends Term> extends SymbolInstance<Predicate, T> {
 		return new Atom<T>(symbol, variables, new ArrayList<T>(parameters), true).intern();
 	}
 
+	/**
+	 *  Use this method when loading a new domain into the same JVM.
+	 */
+	public static void clearCache() {
+		CACHE.clear();
+	}
+
 	public Atom<T> intern() {
 		return CACHE.get(this);
 	}
@@ -128,6 +128,13 @@ public class Literal<T extends Term> implements Rebindable<Predicate, T>, Serial
 		return new Literal<W>(atom.applySubstitution(sub), value).intern();
 	}
 
+	/**
+	 *  Use this method when loading a new domain into the same JVM.
+	 */
+	public static void clearCache() {
+		CACHE.clear();
+	}
+
 	public Literal<T> intern() {
 		return CACHE.get(this);
 	}
@@ -43,6 +43,8 @@ public class Type implements Serializable {
 	public static void clearTypeHierarchy() {
 		SUBCLASS_MAP.clear();
 		SUPERCLASS_MAP.clear();
+		for (Type type : new Type[] {ANYTHING_TYPE, OPERATOR_TYPE, INT_TYPE})
+			SUBCLASS_MAP.put(type, new ArrayList<Type>());
 	}
 
 	private final String name;
@@ -61,6 +61,13 @@ public class Variable implements Term {
 		this.hashCode = computeHashCode();
 	}
 
+	/**
+	 *  Use this method when loading a new domain into the same JVM.
+	 */
+	public static void clearCache() {
+		CACHE.clear();
+	}
+
 	public Variable intern() {
 		return CACHE.get(this);
 	}
@@ -25,6 +25,7 @@ import java.util.Collections;
 import java.util.List;
 
 import au.rmit.agtgrp.pplib.fol.Substitution;
+import au.rmit.agtgrp.pplib.fol.SubstitutionCache;
 import au.rmit.agtgrp.pplib.fol.predicate.Literal;
 import au.rmit.agtgrp.pplib.fol.symbol.SymbolInstance;
 import au.rmit.agtgrp.pplib.fol.symbol.Term;
@@ -35,11 +36,21 @@ public class Operator<T extends Term> extends SymbolInstance<OperatorSymbol, T>
 
 	private static final long serialVersionUID = 1L;
 
+	// operators are immutable, so the same operator under the same bindings can be shared
+	private static final SubstitutionCache<Operator<?>, Operator<?>> GROUNDINGS = new SubstitutionCache<Operator<?>, Operator<?>>();
+
 	protected final List<Literal<T>> preconditions;
 	protected final List<Literal<T>> postconditions;
 
 	protected final int hashCode;
 
+	/**
+	 *  Use this method when loading a new domain into the same JVM.
+	 */
+	public static void clearCache() {
+		GROUNDINGS.clear();
+	}
+
 	public Operator(String name, List<Variable> variables, List<? extends T> parameters, 
 			List<Literal<T>> preconditions, List<Literal<T>> postconditions) {
 
@@ -168,6 +179,17 @@ public class Operator<T extends Term> extends SymbolInstance<OperatorSymbol, T>
 
 	@Override
 	public <W extends Term> Operator<W> applySubstitution(Substitution<W> sub) {
+		Object key = GROUNDINGS.getKey(this, sub, super.variables, super.parameters);
+		@SuppressWarnings("unchecked")
+		Operator<W> op = (Operator<W>) GROUNDINGS.get(key);
+		if (op == null) {
+			op = buildSubstitution(sub);
+			GROUNDINGS.put(key, op);
+		}
+		return op;
+	}
+
+	private <W extends Term> Operator<W> buildSubstitution(Substitution<W> sub) {
 		List<Literal<W>> renamedPrecons = new ArrayList<Literal<W>>();
 		for (Literal<T> precon : this.preconditions)
 			renamedPrecons.add(precon.applySubstitution(sub));
@@ -106,6 +106,28 @@ public class PddlParser {
 		plan = null;
 	}
 	
+	/**
+	 * Parses a problem against the domain already loaded by parse(File), so
+	 * that many problems of one domain share a single domain translation.
+	 */
+	public void parseProblem(File problemFile) throws FileNotFoundException {
+		if (parser == null || domain == null)
+			throw new IllegalStateException("Must parse domain first!");
+		
+		try {
+			parser.parseProblem(problemFile);
+			if (!parser.getErrorManager().isEmpty()) {
+				parser.getErrorManager().printAll();
+				throw new PddlParserException("Error parsing PDDL in " + problemFile);
+			}
+		}
+		catch (FileNotFoundException e) {
+			throw new PddlParserException(e.getMessage());
+		}
+		
+		problem = translator.convertProblem(parser.getProblem());
+		plan = null;
+	}
 
 	
 	public void setDomainAndProblem(PddlProblem problem) {
@@ -115,6 +137,19 @@ public class PddlParser {
 	}
 
 	
+	/**
+	 * Parses a plan, choosing the format from the file extension.
+	 */
+	public void parsePlan(File planFile) throws IOException, PddlParserException {
+		String planFileName = planFile.getName();
+		if (planFileName.endsWith(".lama") || planFileName.endsWith(".ss") || planFileName.endsWith(".bfws"))
+			parseFDPlan(planFile);
+		else if (planFileName.endsWith(".m"))
+			parseMadagascarPlan(planFile);
+		else
+			throw new IllegalArgumentException("Unknown plan type: " + planFile);
+	}
+	
 	public void parseFFPlan(File planFile) throws IOException, PddlParserException {
 		List<String> planStrs = Files.readAllLines(Paths.get(planFile.toURI()));
 		planStrs.remove(0);
@@ -34,7 +34,7 @@ public abstract class AbstractPct implements Serializable {
 	
 	private static final WeakHashMap<AbstractPct, WeakReference<? extends AbstractPct>> CACHE = new WeakHashMap<AbstractPct, WeakReference<? extends AbstractPct>>();
 
-	public static <T extends AbstractPct> T getCached(T prodCon) {
+	public static synchronized <T extends AbstractPct> T getCached(T prodCon) {
 		@SuppressWarnings("unchecked")
 		WeakReference<T> cached = (WeakReference<T>) CACHE.get(prodCon);
 		if (cached != null) {
@@ -23,8 +23,11 @@ package au.rmit.agtgrp.pplib.pddl.pct;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import au.rmit.agtgrp.pplib.fol.Substitution;
@@ -33,12 +36,17 @@ import au.rmit.agtgrp.pplib.fol.predicate.Atom;
 import au.rmit.agtgrp.pplib.fol.predicate.Literal;
 import au.rmit.agtgrp.pplib.fol.predicate.Predicate;
 import au.rmit.agtgrp.pplib.fol.symbol.Term;
-import au.rmit.agtgrp.pplib.fol.symbol.Type;
 import au.rmit.agtgrp.pplib.fol.symbol.Variable;
 import au.rmit.agtgrp.pplib.pddl.Operator;
 import au.rmit.agtgrp.pplib.pddl.Plan;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.PcPlan;
 
+/**
+ * Builds causal structures from plans. The effects of the plan are indexed
+ * by predicate (and ground arguments, where the bindings matter) in a single
+ * pass over the plan, so each consumer only visits the steps which could
+ * produce it.
+ */
 public class CausalStructureFactory {
 
 	public static PcPlan getEquivalentPcoPlan(Plan plan) {
@@ -51,13 +59,64 @@ public class CausalStructureFactory {
 	}
 
 	public static PcPlan getMinimalPcoPlan(Plan plan, boolean deorder, boolean ground) {
-		CausalStructure constraints = getMinimalPcoConstraints(plan, deorder, ground);
+		return getMinimalPcoPlan(plan, deorder, ground, 0);
+	}
+
+	public static PcPlan getMinimalPcoPlan(Plan plan, boolean deorder, boolean ground, int maxNegProducers) {
+		CausalStructure constraints = getMinimalPcoConstraints(plan, deorder, ground, maxNegProducers);
 		return new PcPlan(plan.getProblem(), plan.getPlanSteps(), plan.getSubstitution(), constraints);
 	}
 
 	public static CausalStructure getEquivalentPcoConstraints(Plan plan) {
 
 		CausalStructure constraints = new CausalStructure(true);
+		Substitution<Constant> sub = plan.getSubstitution();
+		InitialState initState = new InitialState(plan);
+
+		// effects of the initial state, and of each later step, on each ground atom
+		Map<List<Object>, List<Producer>> initEffects = new HashMap<List<Object>, List<Producer>>();
+		Map<List<Object>, AtomHistory> histories = new HashMap<List<Object>, AtomHistory>();
+		for (int j = 0; j < plan.length(); j++) {
+			Operator<Variable> prod = plan.getPlanSteps().get(j);
+
+			List<List<Object>> keys = new ArrayList<List<Object>>();
+			Set<List<Object>> added = new HashSet<List<Object>>();
+			for (Literal<Variable> postcon : prod.getPostconditions()) {
+				List<Object> key = getAtomKey(postcon.getAtom(), sub);
+				keys.add(key);
+				if (postcon.getValue())
+					added.add(key);
+			}
+
+			for (int post_j = 0; post_j < prod.getPostconditions().size(); post_j++) {
+				Literal<Variable> postcon = prod.getPostconditions().get(post_j);
+				List<Object> key = keys.get(post_j);
+
+				// check if undone by later effect
+				if (!postcon.getValue() && added.contains(key))
+					continue;
+
+				Producer prodPc = new Producer(prod, postcon).intern();
+				if (j == 0) {
+					List<Producer> effects = initEffects.get(key);
+					if (effects == null) {
+						effects = new ArrayList<Producer>();
+						initEffects.put(key, effects);
+					}
+					effects.add(prodPc);
+				} else {
+					AtomHistory history = histories.get(key);
+					if (history == null) {
+						history = new AtomHistory();
+						histories.put(key, history);
+					}
+					history.addEffect(j, prodPc);
+				}
+			}
+		}
+
+		for (AtomHistory history : histories.values())
+			history.close();
 
 		for (int i = 1; i < plan.length(); i++) { // each step in plan, except initial step
 
@@ -65,88 +124,35 @@ public class CausalStructureFactory {
 			for (int pre_i = 0; pre_i < cons.getPreconditions().size(); pre_i++) { // each precon in step
 
 				Literal<Variable> pre = cons.getPreconditions().get(pre_i);
+				List<Object> key = getAtomKey(pre.getAtom(), sub);
 
+				// find actual producer: the earliest producer since the last deleter before step i
 				Producer actualProducer = null;
 				boolean threatFound = false;
-				// find actual producer
-				for (int j = i - 1; j >= 0; j--) { // each previous step in plan, in reverse order
+				AtomHistory history = histories.get(key);
+				EffectGroup group = history == null ? null : history.getLastGroupBefore(i);
+				if (group != null) {
+					int v = pre.getValue() ? 1 : 0;
+					actualProducer = group.producer[v];
+					threatFound = group.threatened[v];
+				}
 
-					Operator<Variable> prod = plan.getPlanSteps().get(j);
+				if (!threatFound) {
 					//equality, neg preconditions can link to initial state
-					if (j == 0) {			
-						if (pre.getAtom().getSymbol().equals(Predicate.EQUALS)) { // equality precon
-							Variable v1 = pre.getAtom().getVariables().get(0);
-							Variable v2 = pre.getAtom().getVariables().get(1);
-
-							// (H1 = H1) or (H1 != H2)
-							if (plan.getSubstitution().apply(v1).equals(plan.getSubstitution().apply(v2)) == pre.getValue()) {
-
-								List<Variable> newVars = new ArrayList<Variable>();
-								for (Variable var : pre.getAtom().getVariables())
-									newVars.add(getInitialStateVariable(var, plan));
-
-								actualProducer = new Producer(prod, pre.resetVariables(newVars).rebind(newVars)).intern();
-
-							}
-						}
-						else if (!pre.getValue()) { // neg precon, not equality 
-							// pre = -p(x), p(x) is not in initial state
-
-							List<Variable> newVars = new ArrayList<Variable>();
-							for (Variable var : pre.getAtom().getVariables())
-								newVars.add(getInitialStateVariable(var, plan));
-
-							Literal<Variable> resetPre = pre.resetVariables(newVars).rebind(newVars);
-							if (!prod.getPostconditions().contains(resetPre.getNegated()))
-								actualProducer = new Producer(prod, resetPre).intern();
-
-						}						
-					}
-
-
-					// each postcon in previous steps
-					for (int post_j = 0; post_j < prod.getPostconditions().size(); post_j++) { 
-
-						Literal<Variable> postcon = prod.getPostconditions().get(post_j);
-
-						if (pre.getAtom().getSymbol().equals(postcon.getAtom().getSymbol())) { // same symbol
-							// check bindings
-							boolean sameBindings = true;
-							for (int b = 0; b < pre.getAtom().getVariables().size(); b++) {
-								Variable prev = pre.getAtom().getVariables().get(b);
-								Variable postv = postcon.getAtom().getVariables().get(b);
-
-								// if bindings not the same
-								if (!plan.getSubstitution().apply(prev).equals(plan.getSubstitution().apply(postv))) {
-									sameBindings = false;
-									break;
-								}
-							}
-							
-							if (!sameBindings) {
-								continue;
-							}
-							
-							// check if undone by later effect
-							if (prod.applySubstitution(plan.getSubstitution()).isUndone(postcon.applySubstitution(plan.getSubstitution()))) {
-								continue;
-							}
-							
-							// same value
-							if (pre.getValue() == postcon.getValue()) { 
-								actualProducer = new Producer(prod, postcon).intern();
-							} else { // opposite value, not undone -- deletes precon
-								threatFound = true;
+					Producer initProducer = initState.getProducer(pre);
+					if (initProducer != null)
+						actualProducer = initProducer;
+
+					List<Producer> effects = initEffects.get(key);
+					if (effects != null) {
+						for (Producer effect : effects) {
+							if (effect.literal.getValue() != pre.getValue())
 								break;
-							}
+							actualProducer = effect;
 						}
 					}
-					
-					if (threatFound)
-						break;
 				}
 
-
 				if (actualProducer == null) {
 					throw new RuntimeException("No producer found for precondition:\n" 
 							+ pre.applySubstitution(plan.getSubstitution()) + "\nIn operator: \n" + cons);
@@ -162,20 +168,41 @@ public class CausalStructureFactory {
 	}
 
 	public static CausalStructure getMinimalPcoConstraints(Plan plan, boolean deorder, boolean ground) {
-		CausalStructure constraints = new CausalStructure(ground);
+		return getMinimalPcoConstraints(plan, deorder, ground, 0);
+	}
 
-		Map<Predicate, ArrayList<Literal<Variable>>> initLitsMap = new HashMap<Predicate, ArrayList<Literal<Variable>>>();
-		for (Literal<Variable> postCon : plan.getInitialAction().getPostconditions()) {
-			ArrayList<Literal<Variable>> predLits = initLitsMap.get(postCon.getAtom().getSymbol());
-			if (predLits == null) {
-				predLits = new ArrayList<Literal<Variable>>();
-				initLitsMap.put(postCon.getAtom().getSymbol(), predLits);
+	/**
+	 * Negated preconditions may be produced by the initial state, by the
+	 * negation of any fact not in it. At most maxNegProducers (0 for no
+	 * limit) such producers are generated for each precondition, starting
+	 * with the one codesignated with the precondition in the plan.
+	 */
+	public static CausalStructure getMinimalPcoConstraints(Plan plan, boolean deorder, boolean ground, int maxNegProducers) {
+		CausalStructure constraints = new CausalStructure(ground);
+		Substitution<Constant> sub = ground ? plan.getSubstitution() : null;
+		InitialState initState = new InitialState(plan);
+
+		// each possible producer, in step order, by value and predicate (and ground arguments if ground)
+		Map<Boolean, Map<List<Object>, List<StepProducer>>> producers = new HashMap<Boolean, Map<List<Object>, List<StepProducer>>>();
+		producers.put(true, new HashMap<List<Object>, List<StepProducer>>());
+		producers.put(false, new HashMap<List<Object>, List<StepProducer>>());
+		for (int j = 0; j < plan.length(); j++) {
+			Operator<Variable> prod = plan.getPlanSteps().get(j);
+			for (Literal<Variable> post : prod.getPostconditions()) {
+				if (j != 0 && prod.isUndone(post)) // initial state "effects" are never undone.
+					continue;
+
+				List<Object> key = getAtomKey(post.getAtom(), sub);
+				List<StepProducer> prods = producers.get(post.getValue()).get(key);
+				if (prods == null) {
+					prods = new ArrayList<StepProducer>();
+					producers.get(post.getValue()).put(key, prods);
+				}
+				prods.add(new StepProducer(j, new Producer(prod, post).intern()));
 			}
-
-			predLits.add(postCon);
 		}
 
-		Set<Producer> inequalities = null;
+		Map<List<Object>, List<Producer>> inequalities = null;
 
 		for (int i = 1; i < plan.length(); i++) { // each step in plan, except initial step
 			Operator<Variable> cons = plan.getPlanSteps().get(i);
@@ -183,63 +210,42 @@ public class CausalStructureFactory {
 
 				Literal<Variable> pre = cons.getPreconditions().get(pre_i);
 				Consumer consPc = new Consumer(cons, pre).intern();
+				List<Object> key = getAtomKey(pre.getAtom(), sub);
+
+				// equality, negated precons
+				if (pre.getAtom().getSymbol().equals(Predicate.EQUALS)) {
+					if (pre.getValue())
+						throw new IllegalArgumentException("POSITIVE EQUALITY REQUIREMENT: " + pre);
+
+					if (inequalities == null)
+						inequalities = getEqualityProducers(plan, sub);
 
-				// find all potential producers
-				for (int j = 0; j < (deorder ? i : plan.length()); j++) { // de/reorder -- previous steps/every step in plan 
-
-					// equality, negated precons
-					if (j == 0) {
-						if (pre.getAtom().getSymbol().equals(Predicate.EQUALS)) {
-							if (pre.getValue())
-								throw new IllegalArgumentException("POSITIVE EQUALITY REQUIREMENT: " + pre);
-							
-							if (inequalities == null)
-								inequalities = getEqualityProducers(plan);
-							
-							for (Producer eqProd : inequalities)
-								if (assignable(eqProd.literal.getAtom(), pre.getAtom())) {
-									if (!ground || codesignated(eqProd.literal.getAtom(), consPc.literal.getAtom(), plan.getSubstitution())) {
-										constraints.addProducerConsumerOption(eqProd, consPc);
-									}
-								}					
+					List<Producer> eqProds = inequalities.get(key);
+					if (eqProds != null) {
+						for (Producer eqProd : eqProds) {
+							if (assignable(eqProd.literal.getAtom(), pre.getAtom()))
+								constraints.addProducerConsumerOption(eqProd, consPc);
 						}
-						else if (!pre.getValue()) {
-							for (Producer negProd : getInitialStateNegationProducers(pre, plan)) {
-								if (assignable(negProd.literal.getAtom(), pre.getAtom())) {
-									if (!ground || codesignated(negProd.literal.getAtom(), consPc.literal.getAtom(), plan.getSubstitution())) {
-										constraints.addProducerConsumerOption(negProd, consPc);
-									}
-								}
+					}
+				}
+				else if (!pre.getValue()) {
+					for (Producer negProd : initState.getNegationProducers(cons, pre, ground, maxNegProducers > 0 ? maxNegProducers : Integer.MAX_VALUE)) {
+						if (assignable(negProd.literal.getAtom(), pre.getAtom())) {
+							if (!ground || codesignated(negProd.literal.getAtom(), consPc.literal.getAtom(), plan.getSubstitution())) {
+								constraints.addProducerConsumerOption(negProd, consPc);
 							}
 						}
 					}
+				}
 
-					if (j != i) {
-						Operator<Variable> prod = plan.getPlanSteps().get(j);
-						List<Literal<Variable>> lits = null;
-						if (j == 0)
-							lits = initLitsMap.get(consPc.literal.getAtom().getSymbol());
-						else
-							lits = prod.getPostconditions();
-
-						if (lits != null) {
-							for (int post_j = 0; post_j < lits.size(); post_j++) { // each postcon in other step
-
-								Literal<Variable> post = lits.get(post_j);
-								Producer prodPc = new Producer(prod, post).intern();
-
-								if (pre.getAtom().getSymbol().equals(post.getAtom().getSymbol()) && // same symbol
-										pre.getValue() == post.getValue() && // same value
-										assignable(post.getAtom(), pre.getAtom()) && // bindable, as per variable types
-										(j == 0 || !prod.isUndone(post))) { // initial state "effects" are never undone.
+				List<StepProducer> prods = producers.get(pre.getValue()).get(key);
+				if (prods != null) {
+					for (StepProducer prod : prods) {
+						if (deorder && prod.step >= i) // de/reorder -- previous steps/every step in plan
+							break;
 
-									// check if causal structure must be ground
-									if (!ground || codesignated(prodPc.literal.getAtom(), consPc.literal.getAtom(), plan.getSubstitution())) {
-										constraints.addProducerConsumerOption(prodPc, consPc);
-									}
-								}
-							}
-						}
+						if (prod.step != i && assignable(prod.producer.literal.getAtom(), pre.getAtom())) // bindable, as per variable types
+							constraints.addProducerConsumerOption(prod.producer, consPc);
 					}
 				}
 
@@ -248,12 +254,16 @@ public class CausalStructureFactory {
 			}
 		}
 
+		if (initState.nPruned > 0 || initState.nCapped > 0)
+			System.out.println(initState.getNegationProducerReport());
+
 		return constraints;
 
 	}
 
-	private static Set<Producer> getEqualityProducers(Plan plan) {
-		Set<Producer> negProds = new HashSet<Producer>();
+	// inequality producers, by predicate and, if sub is not null, ground arguments
+	private static Map<List<Object>, List<Producer>> getEqualityProducers(Plan plan, Substitution<Constant> sub) {
+		Set<Producer> negProds = new LinkedHashSet<Producer>();
 		
 		for (Variable v1 : plan.getInitialAction().getVariables()) {
 			Constant c1 = plan.getSubstitution().apply(v1);
@@ -264,91 +274,392 @@ public class CausalStructureFactory {
 				}
 			}
 		}
-		return negProds;
+
+		Map<List<Object>, List<Producer>> negProdMap = new HashMap<List<Object>, List<Producer>>();
+		for (Producer negProd : negProds) {
+			List<Object> key = getAtomKey(negProd.literal.getAtom(), sub);
+			List<Producer> prods = negProdMap.get(key);
+			if (prods == null) {
+				prods = new ArrayList<Producer>();
+				negProdMap.put(key, prods);
+			}
+			prods.add(negProd);
+		}
+		return negProdMap;
 	}
 
+	// the predicate of the atom and, if sub is not null, its ground arguments
+	private static List<Object> getAtomKey(Atom<Variable> atom, Substitution<Constant> sub) {
+		List<Object> key = new ArrayList<Object>(sub == null ? 1 : atom.getVariables().size() + 1);
+		key.add(atom.getSymbol());
+		if (sub != null) {
+			for (Variable var : atom.getVariables())
+				key.add(sub.apply(var));
+		}
+		return key;
+	}
+
+	private static boolean codesignated(Atom<Variable> prod, Atom<Variable> cons, Substitution<Constant> sub) {
+		for (int i = 0; i < prod.getParameters().size(); i++) {
+			if (!sub.apply(cons.getVariables().get(i)).equals(sub.apply(prod.getVariables().get(i)))) {
+				return false;
+			}
+		}
 
-	private static Set<Producer> getInitialStateNegationProducers(Literal<Variable> pre, Plan plan) {
+		return true;
+	}
+
+	private static boolean assignable(Atom<? extends Term> prod, Atom<? extends Term> cons) {
+		for (int i = 0; i < prod.getParameters().size(); i++) {
+			if (!cons.getParameters().get(i).getType().hasSubtype(prod.getParameters().get(i).getType())
+					&& !prod.getParameters().get(i).getType().hasSubtype(cons.getParameters().get(i).getType())) {
+				return false;
+			}
+		}
 
-		if (pre.getValue())
-			throw new IllegalArgumentException(pre.toString());
+		return true;
+	}
 
-		Set<Producer> prods = new HashSet<Producer>();
+	private static class StepProducer {
 
-		for (List<Variable> vars : getAllCombs(pre.getAtom().getSymbol().getTypes(), plan.getInitialAction().getVariables())) {		
-			Literal<Variable> negEff = pre.resetVariables(vars).rebind(vars);
-			if (!plan.getInitialAction().getPostconditions().contains(negEff.getNegated()))
-				prods.add(new Producer(plan.getInitialAction(), negEff).intern());
+		final int step;
+		final Producer producer;
 
+		StepProducer(int step, Producer producer) {
+			this.step = step;
+			this.producer = producer;
 		}
+	}
 
-		return prods;
+	// the effects of one step on a ground atom
+	private static class EffectGroup {
 
-	}
+		final int step;
+
+		// by value (0 false, 1 true): the last effect with the value before any with the opposite value
+		final Producer[] last = new Producer[2];
+		final boolean[] deleted = new boolean[2];
 
+		// by value: the result of searching back from this step for a producer
+		final Producer[] producer = new Producer[2];
+		final boolean[] threatened = new boolean[2];
 
-	private static List<List<Variable>> getAllCombs(List<Type> types, List<Variable> initVars) {
+		EffectGroup(int step) {
+			this.step = step;
+		}
 
-		List<List<Variable>> varLists = new ArrayList<List<Variable>>();
-		if (types.isEmpty()) {
-			varLists.add(new ArrayList<Variable>()); // a single empty list
-			return varLists;
+		void addEffect(Producer effect) {
+			int v = effect.literal.getValue() ? 1 : 0;
+			if (!deleted[v])
+				last[v] = effect;
+			deleted[1-v] = true;
 		}
+	}
 
-		List<List<Variable>> recLists = getAllCombs(types.subList(1, types.size()), initVars);
+	// the effects on a ground atom, by step, excluding the initial state
+	private static class AtomHistory {
 
-		Type t = types.get(0);
+		final List<EffectGroup> groups = new ArrayList<EffectGroup>();
 
-		for (Variable var : initVars) {
-			if (t.hasSubtype(var.getType())) {
-				for (List<Variable> recList : recLists) {			
-					List<Variable> l = new ArrayList<Variable>();
-					l.add(var);
-					l.addAll(recList);
-					varLists.add(l);
+		void addEffect(int step, Producer effect) {
+			if (groups.isEmpty() || groups.get(groups.size()-1).step != step)
+				groups.add(new EffectGroup(step));
+			groups.get(groups.size()-1).addEffect(effect);
+		}
+
+		// searching back, the producer is the earliest since the last deleter
+		void close() {
+			EffectGroup prev = null;
+			for (EffectGroup group : groups) {
+				for (int v = 0; v < 2; v++) {
+					if (group.deleted[v]) {
+						group.producer[v] = group.last[v];
+						group.threatened[v] = true;
+					} else if (prev != null) {
+						group.producer[v] = prev.producer[v] != null ? prev.producer[v] : group.last[v];
+						group.threatened[v] = prev.threatened[v];
+					} else {
+						group.producer[v] = group.last[v];
+					}
 				}
+				prev = group;
 			}
 		}
 
-		return varLists;
-
+		EffectGroup getLastGroupBefore(int step) {
+			int lo = 0;
+			int hi = groups.size() - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				if (groups.get(mid).step < step)
+					lo = mid + 1;
+				else
+					hi = mid - 1;
+			}
+			return hi < 0 ? null : groups.get(hi);
+		}
 	}
 
+	// the initial state, indexed by constant and fact
+	private static class InitialState {
+
+		final Operator<Variable> action;
+		final Substitution<Constant> sub;
+		final Set<Literal<Variable>> facts;
+		final Map<Constant, List<Variable>> varsByConstant;
+
+		// predicates steps other than the initial state have effects on, and the
+		// constants at each position of the facts of the other, static, predicates
+		final Set<Predicate> dynamicPredicates;
+		final Map<Predicate, List<Set<Constant>>> staticFactArgs;
+
+		// negation producer statistics
+		double nPruned; // combinations inconsistent with static preconditions
+		double nSkipped; // combinations not generated due to the limit
+		int nCapped; // preconditions whose producers were limited
+
+		InitialState(Plan plan) {
+			action = plan.getInitialAction();
+			sub = plan.getSubstitution();
+			facts = new HashSet<Literal<Variable>>(action.getPostconditions());
+			varsByConstant = new HashMap<Constant, List<Variable>>();
+			for (Variable var : action.getVariables()) {
+				Constant c = sub.apply(var);
+				List<Variable> vars = varsByConstant.get(c);
+				if (vars == null) {
+					vars = new ArrayList<Variable>();
+					varsByConstant.put(c, vars);
+				}
+				vars.add(var);
+			}
+
+			dynamicPredicates = new HashSet<Predicate>();
+			for (int j = 1; j < plan.length(); j++) {
+				for (Literal<Variable> post : plan.getPlanSteps().get(j).getPostconditions())
+					dynamicPredicates.add(post.getAtom().getSymbol());
+			}
 
-	private static Variable getInitialStateVariable(Variable var, Plan plan) {
-		for (Variable initVar : plan.getInitialAction().getVariables()) {
-			if (plan.getSubstitution().apply(initVar).equals(plan.getSubstitution().apply(var))) {
-				return initVar;
-			}			
+			staticFactArgs = new HashMap<Predicate, List<Set<Constant>>>();
+			for (Literal<Variable> fact : action.getPostconditions()) {
+				Predicate pred = fact.getAtom().getSymbol();
+				if (dynamicPredicates.contains(pred))
+					continue;
+
+				List<Set<Constant>> args = staticFactArgs.get(pred);
+				if (args == null) {
+					args = new ArrayList<Set<Constant>>();
+					for (int k = 0; k < pred.getArity(); k++)
+						args.add(new HashSet<Constant>());
+					staticFactArgs.put(pred, args);
+				}
+				for (int k = 0; k < pred.getArity(); k++)
+					args.get(k).add(sub.apply(fact.getAtom().getVariables().get(k)));
+			}
 		}
 
-		return null;
-	}
+		// the initial state producer of an equality or negative precondition, or null if there is none
+		Producer getProducer(Literal<Variable> pre) {
+			if (pre.getAtom().getSymbol().equals(Predicate.EQUALS)) { // equality precon
+				Variable v1 = pre.getAtom().getVariables().get(0);
+				Variable v2 = pre.getAtom().getVariables().get(1);
 
+				// (H1 = H1) or (H1 != H2)
+				if (sub.apply(v1).equals(sub.apply(v2)) == pre.getValue()) {
+					List<Variable> newVars = getInitialStateVariables(pre);
+					return new Producer(action, pre.resetVariables(newVars).rebind(newVars)).intern();
+				}
+			}
+			else if (!pre.getValue()) { // neg precon, not equality
+				// pre = -p(x), p(x) is not in initial state
+				List<Variable> newVars = getInitialStateVariables(pre);
+				Literal<Variable> resetPre = pre.resetVariables(newVars).rebind(newVars);
+				if (!facts.contains(resetPre.getNegated()))
+					return new Producer(action, resetPre).intern();
+			}
+			return null;
+		}
 
-	private static boolean codesignated(Atom<Variable> prod, Atom<Variable> cons, Substitution<Constant> sub) {
-		for (int i = 0; i < prod.getParameters().size(); i++) {
-			if (!sub.apply(cons.getVariables().get(i)).equals(sub.apply(prod.getVariables().get(i)))) {
-				return false;
+		private List<Variable> getInitialStateVariables(Literal<Variable> pre) {
+			List<Variable> newVars = new ArrayList<Variable>();
+			for (Variable var : pre.getAtom().getVariables()) {
+				List<Variable> initVars = varsByConstant.get(sub.apply(var));
+				newVars.add(initVars == null ? null : initVars.get(0));
 			}
+			return newVars;
 		}
 
-		return true;
-	}
+		/**
+		 * The negations of facts not in the initial state which may produce pre,
+		 * a precondition of cons, generated lazily. Variables of the initial state
+		 * which do not match the types of pre, or whose values would violate a
+		 * static precondition of cons, are pruned. If ground, only those
+		 * codesignated with pre are generated. At most max are generated,
+		 * starting with the one codesignated with pre.
+		 */
+		Iterable<Producer> getNegationProducers(Operator<Variable> cons, Literal<Variable> pre, boolean ground, final int max) {
+			if (pre.getValue())
+				throw new IllegalArgumentException(pre.toString());
+
+			final Predicate pred = pre.getAtom().getSymbol();
+			final List<List<Variable>> candidates = new ArrayList<List<Variable>>();
+			double nTyped = 1;
+			double nCombs = 1;
+			for (int k = 0; k < pred.getArity(); k++) {
+				Variable preVar = pre.getAtom().getVariables().get(k);
+				Constant value = sub.apply(preVar);
+				Set<Constant> domain = getStaticDomain(cons, preVar);
+
+				List<Variable> vars = action.getVariables();
+				if (ground && !pred.isReflexive()) {
+					vars = varsByConstant.get(value);
+					if (vars == null)
+						vars = new ArrayList<Variable>();
+				}
 
-	private static boolean assignable(Atom<? extends Term> prod, Atom<? extends Term> cons) {
-		for (int i = 0; i < prod.getParameters().size(); i++) {
-			if (!cons.getParameters().get(i).getType().hasSubtype(prod.getParameters().get(i).getType())
-					&& !prod.getParameters().get(i).getType().hasSubtype(cons.getParameters().get(i).getType())) {
-				return false;
+				List<Variable> cands = new ArrayList<Variable>();
+				int nTypedK = 0;
+				for (Variable var : vars) {
+					if (!pred.getTypes().get(k).hasSubtype(var.getType()))
+						continue;
+					nTypedK++;
+
+					Constant c = sub.apply(var);
+					if (domain != null && !domain.contains(c))
+						continue;
+
+					// codesignated variable first
+					if (c.equals(value))
+						cands.add(0, var);
+					else
+						cands.add(var);
+				}
+
+				nTyped*=nTypedK;
+				nCombs*=cands.size();
+				candidates.add(cands);
 			}
+			nPruned+=nTyped - nCombs;
+
+			return new Iterable<Producer>() {
+				@Override
+				public Iterator<Producer> iterator() {
+					return new NegationProducerIterator(pred, candidates, max);
+				}
+			};
 		}
 
-		return true;
-	}
+		// the values var can take without violating a static precondition of cons, or null if unconstrained
+		private Set<Constant> getStaticDomain(Operator<Variable> cons, Variable var) {
+			Set<Constant> domain = null;
+			for (Literal<Variable> pre : cons.getPreconditions()) {
+				Predicate pred = pre.getAtom().getSymbol();
+				if (pred.equals(Predicate.EQUALS) || dynamicPredicates.contains(pred))
+					continue;
+
+				List<Set<Constant>> args = staticFactArgs.get(pred);
+				for (int k = 0; k < pred.getArity(); k++) {
+					if (!pre.getAtom().getVariables().get(k).equals(var))
+						continue;
+
+					if (pre.getValue()) { // p(x): some fact p(c)
+						Set<Constant> allowed = args == null ? new HashSet<Constant>() : args.get(k);
+						if (domain == null)
+							domain = new HashSet<Constant>(allowed);
+						else
+							domain.retainAll(allowed);
+					}
+					else if (pred.getArity() == 1 && args != null) { // -p(x): no fact p(c)
+						if (domain == null)
+							domain = new HashSet<Constant>(varsByConstant.keySet());
+						domain.removeAll(args.get(k));
+					}
+				}
+			}
+			return domain;
+		}
+
+		String getNegationProducerReport() {
+			return String.format("Initial state negation producers: %.0f pruned by static preconditions, %.0f not generated for %d preconditions due to the limit",
+					nPruned, nSkipped, nCapped);
+		}
+
+		// iterates over the combinations of candidates, last position fastest
+		private class NegationProducerIterator implements Iterator<Producer> {
+
+			final Predicate pred;
+			final List<List<Variable>> candidates;
+			final int max;
+			final int[] index;
+			boolean more;
+			double nVisited;
+			int nGenerated;
+			Producer next;
+
+			NegationProducerIterator(Predicate pred, List<List<Variable>> candidates, int max) {
+				this.pred = pred;
+				this.candidates = candidates;
+				this.max = max;
+				index = new int[candidates.size()];
+				more = true;
+				for (List<Variable> cands : candidates)
+					more&=!cands.isEmpty();
+				advance();
+			}
 
+			private void advance() {
+				next = null;
+				while (more && next == null) {
+					if (nGenerated == max) {
+						double nCombs = 1;
+						for (List<Variable> cands : candidates)
+							nCombs*=cands.size();
+						nSkipped+=nCombs - nVisited;
+						nCapped++;
+						more = false;
+						break;
+					}
+
+					List<Variable> vars = new ArrayList<Variable>(index.length);
+					for (int k = 0; k < index.length; k++)
+						vars.add(candidates.get(k).get(index[k]));
+					nVisited++;
+
+					int k = index.length - 1;
+					while (k >= 0 && ++index[k] == candidates.get(k).size()) {
+						index[k] = 0;
+						k--;
+					}
+					more = k >= 0;
+
+					Literal<Variable> negEff = new Literal<Variable>(pred, vars, vars, false).intern();
+					if (!facts.contains(negEff.getNegated())) {
+						next = new Producer(action, negEff).intern();
+						nGenerated++;
+					}
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Producer next() {
+				if (next == null)
+					throw new NoSuchElementException();
+				Producer prod = next;
+				advance();
+				return prod;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		}
+	}
 
-	
 	private CausalStructureFactory() { }
 
 }
@@ -30,7 +30,7 @@ public class PcLink implements Serializable {
 	
 	private static final WeakHashMap<PcLink, WeakReference<PcLink>> CACHE = new WeakHashMap<PcLink, WeakReference<PcLink>>();
 
-	public static PcLink getCached(PcLink pcLink) {
+	public static synchronized PcLink getCached(PcLink pcLink) {
 		WeakReference<PcLink> cached = (WeakReference<PcLink>) CACHE.get(pcLink);
 		if (cached != null) {
 			PcLink cachedPc = (PcLink) cached.get();
@@ -1,7 +1,9 @@
 package au.rmit.agtgrp.pplib.pddl.pct;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,19 +17,26 @@ import au.rmit.agtgrp.pplib.fol.symbol.Term;
 import au.rmit.agtgrp.pplib.fol.symbol.Variable;
 import au.rmit.agtgrp.pplib.pddl.Operator;
 
+/**
+ * Threats indexed by the polarity and predicate of the literal they threaten.
+ * The threats to each consumer, i.e., those which pass every check that does
+ * not depend on the producer, are computed once and cached. For ground
+ * queries the threats are also indexed by their ground arguments, so a query
+ * only visits the threats whose bindings match the consumer's.
+ */
 public class ThreatMap {
 
 	public static ThreatMap getThreatMap(List<Operator<Variable>> freeSteps) {
 		Map<Boolean, Map<Predicate, Set<Threat>>> threatMap = new HashMap<Boolean, Map<Predicate, Set<Threat>>>();
 		threatMap.put(true, new HashMap<Predicate, Set<Threat>>());
 		threatMap.put(false, new HashMap<Predicate, Set<Threat>>());
-		
+
 		for (Operator<Variable> threatOp : freeSteps) {
 			for (Literal<Variable> threatLit : threatOp.getPostconditions()) {
 				// produces p, is a threat to -p
 				Set<Threat> negs = threatMap.get(!threatLit.getValue()).get(threatLit.getAtom().getSymbol());
 				if (negs == null) {
-					negs = new HashSet<Threat>();
+					negs = new LinkedHashSet<Threat>();
 					threatMap.get(!threatLit.getValue()).put(threatLit.getAtom().getSymbol(), negs);
 				}
 				negs.add(new Threat(threatOp, threatLit.getNegated()));
@@ -37,29 +46,50 @@ public class ThreatMap {
 		return new ThreatMap(threatMap);
 	}
 
-	private Map<Boolean, Map<Predicate, Set<Threat>>> threatMap = new HashMap<Boolean, Map<Predicate, Set<Threat>>>();
+	private final Map<Boolean, Map<Predicate, List<Threat>>> threatMap;
+
+	// positive postconditions of the threat's operator which may undo it in ground form
+	private final Map<Threat, List<Literal<Variable>>> undoers;
 
+	// threats to each consumer, before checking the producer
+	private final Map<Consumer, List<Threat>> consumerThreats;
 
+	// as above, for ground queries under groundSub
+	private Substitution<Constant> groundSub;
+	private Map<Boolean, Map<Predicate, Map<List<Constant>, List<Threat>>>> groundThreatMap;
+	private Map<Consumer, List<Threat>> groundConsumerThreats;
 
 	public ThreatMap(Map<Boolean, Map<Predicate, Set<Threat>>> threatMap) {
-		this.threatMap = threatMap;
-	}
+		this.threatMap = new HashMap<Boolean, Map<Predicate, List<Threat>>>();
+		this.undoers = new HashMap<Threat, List<Literal<Variable>>>();
+		for (boolean value : new boolean[] {true, false}) {
+			Map<Predicate, List<Threat>> predMap = new HashMap<Predicate, List<Threat>>();
+			this.threatMap.put(value, predMap);
+			if (!threatMap.containsKey(value))
+				continue;
 
-	public Set<Threat> getNegations(Consumer cons) {
-		Set<Threat> negs = threatMap.get(cons.literal.getValue()).get(cons.literal.getAtom().getSymbol());
-		if (negs == null) {
-			negs = new HashSet<Threat>();
-			threatMap.get(cons.literal.getValue()).put(cons.literal.getAtom().getSymbol(), negs);
+			for (Map.Entry<Predicate, Set<Threat>> entry : threatMap.get(value).entrySet()) {
+				predMap.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<Threat>(entry.getValue())));
+				for (Threat threat : entry.getValue())
+					undoers.put(threat, getUndoers(threat));
+			}
 		}
-		return negs;
+
+		consumerThreats = new HashMap<Consumer, List<Threat>>();
 	}
-	
-	public Set<Threat> getNegations(PcLink pcLink) {
-		Set<Threat> negs = threatMap.get(pcLink.getProducer().literal.getValue()).get(pcLink.getProducer().literal.getAtom().getSymbol());
-		if (negs == null) {
-			negs = new HashSet<Threat>();
-			threatMap.get(pcLink.getProducer().literal.getValue()).put(pcLink.getProducer().literal.getAtom().getSymbol(), negs);
-		}
+
+	public List<Threat> getNegations(Consumer cons) {
+		return getNegations(cons.literal);
+	}
+
+	public List<Threat> getNegations(PcLink pcLink) {
+		return getNegations(pcLink.getProducer().literal);
+	}
+
+	private List<Threat> getNegations(Literal<Variable> literal) {
+		List<Threat> negs = threatMap.get(literal.getValue()).get(literal.getAtom().getSymbol());
+		if (negs == null)
+			return Collections.emptyList();
 		return negs;
 	}
 
@@ -83,16 +113,15 @@ public class ThreatMap {
 			return false;
 
 		// is undone in uninstantiated form (threat to p(x),  p(x) in postcons)
-		if (negation.literal.getValue() && negation.operator.getPostconditions().contains(negation.literal))
+		if (isUndone(negation))
 			return false;
-				
+
 		// is undone in ground form (p(x), -p(y), x=1, y=1)
-		if (sub != null && 
-			negation.operator.applySubstitution(sub).isUndone(negation.literal.applySubstitution(sub).getNegated()))
+		if (sub != null && isUndone(negation, sub))
 			return false;
-		
+
 		// is a negative postcon threatening a pos postcon in the same operator
-		if (pcLink.getProducer().operator.equals(negation.operator) && negation.literal.getValue()) 
+		if (pcLink.getProducer().operator.equals(negation.operator) && negation.literal.getValue())
 			return false;
 
 		// if ground, check bindings and return
@@ -103,20 +132,155 @@ public class ThreatMap {
 		return true;
 	}
 
-	public Set<Threat> getNonGroundThreats(PcLink pcLink) {
+	public List<Threat> getNonGroundThreats(PcLink pcLink) {
 		return getGroundThreats(pcLink, null);
 	}
 
-	public Set<Threat> getGroundThreats(PcLink pcLink, Substitution<Constant> sub) {
-		Set<Threat> threats = new HashSet<Threat>();
-		for (Threat threat : getNegations(pcLink)) {
-			if (isThreat(pcLink, threat, sub)) {
-				threats.add(threat);
+	/**
+	 * Returns the threats to the link, in a list which must not be modified.
+	 */
+	public List<Threat> getGroundThreats(PcLink pcLink, Substitution<Constant> sub) {
+		Literal<Variable> prodLit = pcLink.getProducer().literal;
+		Literal<Variable> consLit = pcLink.getConsumer().literal;
+
+		// threats are cached by consumer, so the producer must threaten the same literal
+		if (prodLit.getValue() != consLit.getValue() || !prodLit.getAtom().getSymbol().equals(consLit.getAtom().getSymbol())) {
+			List<Threat> threats = new ArrayList<Threat>();
+			for (Threat threat : getNegations(pcLink)) {
+				if (isThreat(pcLink, threat, sub))
+					threats.add(threat);
 			}
+			return threats;
+		}
+
+		List<Threat> consThreats = getConsumerThreats(pcLink.getConsumer(), sub);
+
+		// a negative postcon cannot threaten a positive postcon of the same operator
+		Operator<Variable> prodOp = pcLink.getProducer().operator;
+		int first = 0;
+		while (first < consThreats.size() && !isSameOperatorThreat(consThreats.get(first), prodOp))
+			first++;
+		if (first == consThreats.size())
+			return consThreats;
+
+		List<Threat> threats = new ArrayList<Threat>(consThreats.subList(0, first));
+		for (int i = first + 1; i < consThreats.size(); i++) {
+			if (!isSameOperatorThreat(consThreats.get(i), prodOp))
+				threats.add(consThreats.get(i));
 		}
 		return threats;
 	}
 
+	private static boolean isSameOperatorThreat(Threat threat, Operator<Variable> prodOp) {
+		return threat.literal.getValue() && threat.operator.equals(prodOp);
+	}
+
+	private synchronized List<Threat> getConsumerThreats(Consumer cons, Substitution<Constant> sub) {
+		if (sub == null) {
+			List<Threat> threats = consumerThreats.get(cons);
+			if (threats == null) {
+				threats = filter(cons, getNegations(cons));
+				consumerThreats.put(cons, threats);
+			}
+			return threats;
+		}
+
+		if (sub != groundSub)
+			buildGroundIndex(sub);
+
+		List<Threat> threats = groundConsumerThreats.get(cons);
+		if (threats == null) {
+			Map<List<Constant>, List<Threat>> argMap = groundThreatMap.get(cons.literal.getValue()).get(cons.literal.getAtom().getSymbol());
+			List<Threat> negs = argMap == null ? null : argMap.get(sub.apply(cons.literal.getAtom().getVariables()));
+			threats = negs == null ? Collections.<Threat>emptyList() : filter(cons, negs);
+			groundConsumerThreats.put(cons, threats);
+		}
+		return threats;
+	}
+
+	// the threats which are not undone under sub, by their ground arguments
+	private void buildGroundIndex(Substitution<Constant> sub) {
+		groundThreatMap = new HashMap<Boolean, Map<Predicate, Map<List<Constant>, List<Threat>>>>();
+		for (boolean value : new boolean[] {true, false}) {
+			Map<Predicate, Map<List<Constant>, List<Threat>>> predMap = new HashMap<Predicate, Map<List<Constant>, List<Threat>>>();
+			groundThreatMap.put(value, predMap);
+
+			for (Map.Entry<Predicate, List<Threat>> entry : threatMap.get(value).entrySet()) {
+				Map<List<Constant>, List<Threat>> argMap = new HashMap<List<Constant>, List<Threat>>();
+				predMap.put(entry.getKey(), argMap);
+				for (Threat threat : entry.getValue()) {
+					if (isUndone(threat) || isUndone(threat, sub))
+						continue;
+					List<Constant> args = sub.apply(threat.literal.getAtom().getVariables());
+					List<Threat> threats = argMap.get(args);
+					if (threats == null) {
+						threats = new ArrayList<Threat>();
+						argMap.put(args, threats);
+					}
+					threats.add(threat);
+				}
+			}
+		}
+
+		groundConsumerThreats = new HashMap<Consumer, List<Threat>>();
+		groundSub = sub;
+	}
+
+	private List<Threat> filter(Consumer cons, List<Threat> negs) {
+		List<Threat> threats = new ArrayList<Threat>();
+		for (Threat threat : negs) {
+			// consumer cannot be a threat to itself
+			if (threat.operator.equals(cons.operator))
+				continue;
+			if (!assignable(threat.literal.getAtom(), cons.literal.getAtom()))
+				continue;
+			if (isUndone(threat))
+				continue;
+			threats.add(threat);
+		}
+		if (threats.isEmpty())
+			return Collections.emptyList();
+		return Collections.unmodifiableList(threats);
+	}
+
+	// threat to p(x), p(x) in postcons
+	private static boolean isUndone(Threat threat) {
+		return threat.literal.getValue() && threat.operator.getPostconditions().contains(threat.literal);
+	}
+
+	// threat to p(x), p(y) in postcons, x=y under sub
+	private boolean isUndone(Threat threat, Substitution<Constant> sub) {
+		List<Literal<Variable>> threatUndoers = undoers.get(threat);
+		if (threatUndoers == null)
+			threatUndoers = getUndoers(threat);
+
+		List<Variable> vars = threat.literal.getAtom().getVariables();
+		for (Literal<Variable> undoer : threatUndoers) {
+			List<Variable> undoerVars = undoer.getAtom().getVariables();
+			boolean same = true;
+			for (int i = 0; same && i < vars.size(); i++)
+				same = sub.apply(vars.get(i)).equals(sub.apply(undoerVars.get(i)));
+			if (same)
+				return true;
+		}
+		return false;
+	}
+
+	// negative effects are applied first, so may be undone by positive effects
+	private static List<Literal<Variable>> getUndoers(Threat threat) {
+		if (!threat.literal.getValue())
+			return Collections.emptyList();
+
+		List<Literal<Variable>> threatUndoers = new ArrayList<Literal<Variable>>();
+		for (Literal<Variable> postcon : threat.operator.getPostconditions()) {
+			if (postcon.getValue() && postcon.getAtom().getSymbol().equals(threat.literal.getAtom().getSymbol()))
+				threatUndoers.add(postcon);
+		}
+		if (threatUndoers.isEmpty())
+			return Collections.emptyList();
+		return threatUndoers;
+	}
+
 	private static boolean assignable(Atom<? extends Term> prod, Atom<? extends Term> cons) {
 		for (int i = 0; i < prod.getParameters().size(); i++) {
 			if (!cons.getParameters().get(i).getType().hasSubtype(prod.getParameters().get(i).getType())
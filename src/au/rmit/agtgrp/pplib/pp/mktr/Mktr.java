@@ -21,7 +21,10 @@
 package au.rmit.agtgrp.pplib.pp.mktr;
 
 import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -39,7 +42,9 @@ import au.rmit.agtgrp.pplib.pddl.pct.CausalStructureFactory;
 import au.rmit.agtgrp.pplib.pddl.pct.PcLink;
 import au.rmit.agtgrp.pplib.pp.mktr.policy.RelaxationPolicy;
 import au.rmit.agtgrp.pplib.pp.partialplan.InstantiatablePartialPlan;
+import au.rmit.agtgrp.pplib.pp.partialplan.InstantiatablePartialPlan.PlanCountResult;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.PcPlan;
+import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.csp.CspPartialPlan;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.csp.PcToCspEncoder;
 import au.rmit.agtgrp.pplib.pp.partialplan.planset.PlanSet;
 import au.rmit.agtgrp.pplib.utils.FormattingUtils;
@@ -49,7 +54,7 @@ public class Mktr {
 	private Plan plan;
 
 	private PcToCspEncoder constraintEncoder;	
-	private InstantiatablePartialPlan<ExpressionCsp> constraints;
+	private CspPartialPlan constraints;
 
 	private RelaxationPolicy policy;
 	private String policyName;
@@ -74,6 +79,12 @@ public class Mktr {
 
 	private PrintStream out = System.out;
 
+	// links being tested ahead of the policy, in the order they will be returned
+	private int threads = 1;
+	private ExecutorService workers;
+	private final Map<PcLink, Future<Boolean>> speculations = new LinkedHashMap<PcLink, Future<Boolean>>();
+	private final Map<PcLink, CspPartialPlan> attempts = new HashMap<PcLink, CspPartialPlan>();
+
 
 	/**
 	 * Initialises the MKTR algorithm.
@@ -108,6 +119,16 @@ public class Mktr {
 		this.out = out;
 	}
 
+	/**
+	 * Sets the number of candidate links whose treewidth is tested at once.
+	 * Links are still added in the order chosen by the policy, so the result
+	 * is the same for any number of threads. Only used if the policy can
+	 * tell which links it will return.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
 	public void relax() {
 
 		CountDownLatch latch = new CountDownLatch(1);
@@ -216,6 +237,19 @@ public class Mktr {
 		}
 
 		// start relaxation
+		if (threads > 1)
+			workers = Executors.newFixedThreadPool(threads);
+		try {
+			relaxLinks();
+		} finally {
+			cancelSpeculations();
+			if (workers != null)
+				workers.shutdownNow();
+			workers = null;
+		}
+	}
+
+	private void relaxLinks() {
 		PcLink edge;
 		while ((edge = policy.getNext()) != null) { // select edge
 
@@ -224,26 +258,50 @@ public class Mktr {
 				break;
 			}
 
-			// add edge to graph
-			pcPlan.getConstraints().addProducerConsumerOption(edge);
+			// test the links which follow on the worker pool, each as if the links before it are rejected
+			if (workers != null)
+				speculate(policy.getLookahead(threads));
 
-			// convert to constraint
-			InstantiatablePartialPlan<ExpressionCsp> attempt = constraintEncoder.encodeAsPartialPlan(pcPlan);
-
-			// test treewidth of csp
 			nPcLinksTested++;
+			Future<Boolean> speculation = speculations.remove(edge);
+			CspPartialPlan speculativeAttempt = attempts.remove(edge);
 			try {
-				if (attempt.isTreewidthGreaterThan(maxTreewidth)) {
-					pcPlan.getConstraints().removeProducerConsumerOption(edge);
-					policy.failed(edge);
+				if (speculation != null) {
+					if (getSpeculationResult(speculation))
+						policy.failed(edge);
+					else {
+						pcPlan.getConstraints().addProducerConsumerOption(edge);
+						// an incremental encoder must also patch its own csp
+						if (constraintEncoder.isIncremental())
+							constraints = constraintEncoder.updateAsPartialPlan(edge);
+						else
+							constraints = speculativeAttempt;
+						nPcLinksAdded++;
+						policy.added(edge);
+						// the links which follow were tested without this one
+						cancelSpeculations();
+					}
 				} else {
-					constraints = attempt;
-					nPcLinksAdded++;
-					policy.added(edge);
+					// add edge to graph
+					pcPlan.getConstraints().addProducerConsumerOption(edge);
+
+					// convert to constraint, only re-encoding the edge's consumer
+					CspPartialPlan attempt = constraintEncoder.updateAsPartialPlan(edge);
+
+					// test treewidth of csp
+					if (attempt.isTreewidthGreaterThan(maxTreewidth)) {
+						removeEdge(edge);
+						policy.failed(edge);
+					} else {
+						constraints = attempt;
+						nPcLinksAdded++;
+						policy.added(edge);
+					}
 				}
 			} catch (InterruptedException e) {
 				// tw calculation was cancelled
-				pcPlan.getConstraints().removeProducerConsumerOption(edge);
+				if (speculation == null)
+					removeEdge(edge);
 				break;
 			}
 
@@ -258,6 +316,55 @@ public class Mktr {
 
 	}
 
+	// encodes each link not already being tested, then tests their treewidths on the worker pool
+	private void speculate(List<PcLink> links) {
+		if (links == null)
+			return;
+
+		for (PcLink link : links) {
+			if (speculations.containsKey(link))
+				continue;
+
+			pcPlan.getConstraints().addProducerConsumerOption(link);
+			final CspPartialPlan attempt = constraintEncoder.speculateAsPartialPlan(link);
+			pcPlan.getConstraints().removeProducerConsumerOption(link);
+
+			attempts.put(link, attempt);
+			speculations.put(link, workers.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws InterruptedException {
+					return attempt.isTreewidthGreaterThan(maxTreewidth);
+				}
+			}));
+		}
+	}
+
+	private boolean getSpeculationResult(Future<Boolean> speculation) throws InterruptedException {
+		try {
+			return speculation.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof InterruptedException)
+				throw (InterruptedException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private void cancelSpeculations() {
+		for (Future<Boolean> speculation : speculations.values())
+			speculation.cancel(true);
+		for (CspPartialPlan attempt : attempts.values())
+			attempt.cancel();
+		speculations.clear();
+		attempts.clear();
+	}
+
+	private void removeEdge(PcLink edge) {
+		pcPlan.getConstraints().removeProducerConsumerOption(edge);
+		// the attempt was patched into the current csp, so patch it back
+		if (constraintEncoder.isIncremental())
+			constraints = constraintEncoder.updateAsPartialPlan(edge);
+	}
+
 	private void printSetup() {
 		out.println("Initialising MKTR");
 		out.println("Domain:    " + plan.getDomain().getName());
@@ -300,12 +407,17 @@ public class Mktr {
 					+ added
 					+ (edge == null ? " " : edge));
 
-			//if new plans were found, or it is the first iteration, validate if required
-			if ((nPlans != prevNumPlans || nPcLinksTested == 0) && validatePlans) {
-				out.println("Validating new plans");
-				PlanResult validationResult = plan.getProblem().validateAll(pSet);
-				if (!validationResult.isValid)
-					throw new RuntimeException("\nInvalid plan found!\n" + validationResult.message);
+			try {
+				//if new plans were found, or it is the first iteration, validate if required
+				if ((nPlans != prevNumPlans || nPcLinksTested == 0) && validatePlans) {
+					out.println("Validating new plans");
+					PlanResult validationResult = plan.getProblem().validateAll(pSet);
+					if (!validationResult.isValid)
+						throw new RuntimeException("\nInvalid plan found!\n" + validationResult.message);
+				}
+			} finally {
+				if (pSet != null)
+					pSet.close();
 			}
 
 			prevNumPlans = nPlans;
@@ -323,10 +435,20 @@ public class Mktr {
 
 	}
 	
+	/**
+	 * Returns the plans of the final CSP. The caller must close the set.
+	 */
 	public PlanSet getPlans() throws InterruptedException {
 		return constraints.getPlans(-1, -1).plans;
 	}
 
+	/**
+	 * Estimates the number of plans of the final CSP from nSamples samples.
+	 */
+	public PlanCountResult estimatePlanCount(int nSamples) throws InterruptedException {
+		return constraints.estimateSolutions(nSamples, -1);
+	}
+
 	public boolean timedOut() {
 		return timedOut;
 	}
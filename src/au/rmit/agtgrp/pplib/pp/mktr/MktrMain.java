@@ -37,6 +37,7 @@ import au.rmit.agtgrp.pplib.csp.solver.ZincFormatter;
 import au.rmit.agtgrp.pplib.pddl.Plan;
 import au.rmit.agtgrp.pplib.pddl.PddlProblem.PlanResult;
 import au.rmit.agtgrp.pplib.pp.mktr.policy.RelaxationPolicyException;
+import au.rmit.agtgrp.pplib.pp.partialplan.InstantiatablePartialPlan.PlanCountResult;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.csp.CspEncoderOptions;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.csp.PcToCspEncoder;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.csp.PcToCspEncoderException;
@@ -92,6 +93,7 @@ public class MktrMain {
 			Mktr mktr = new Mktr(plan, encoder,
 					options.policyName, options.treewidth,
 					options.mktrTime, options.validate, options.verbose);
+			mktr.setThreads(options.threads);
 
 			mktr.relax();
 
@@ -121,15 +123,30 @@ public class MktrMain {
 			
 			// count/validate instantiations
 			if (options.count) {
-				System.out.println("Counting instantiations of final CSP");
-				PlanSet plans = mktr.getPlans();
-				System.out.println(plans.getPlanCount() + " plans");
+				PlanSet plans = null;
+				if (options.countSamples > 0) {
+					System.out.println("Estimating instantiations of final CSP");
+					PlanCountResult count = mktr.estimatePlanCount(options.countSamples);
+					System.out.println(String.format("%.0f plans (95%% confidence interval %.0f to %.0f)",
+							count.estimate, count.lowerBound, count.upperBound));
+				} else {
+					System.out.println("Counting instantiations of final CSP");
+					plans = mktr.getPlans();
+					System.out.println(plans.getPlanCount() + " plans");
+				}
 				
-				if (options.validate) {
-					System.out.println("Validating instantiations");
-					PlanResult validationResult = plan.getProblem().validateAll(plans);
-					if (!validationResult.isValid)
-						throw new RuntimeException("\nInvalid plan found!\n" + validationResult.message);
+				try {
+					if (options.validate) {
+						if (plans == null)
+							plans = mktr.getPlans();
+						System.out.println("Validating instantiations");
+						PlanResult validationResult = plan.getProblem().validateAll(plans);
+						if (!validationResult.isValid)
+							throw new RuntimeException("\nInvalid plan found!\n" + validationResult.message);
+					}
+				} finally {
+					if (plans != null)
+						plans.close();
 				}
 			}
 			
@@ -236,12 +253,18 @@ public class MktrMain {
 		@Option(name = "--count", usage = "count plans", metaVar = "OPT")
 		private boolean count;
 
+		@Option(name = "--count-samples", usage = "estimate the plan count from this many samples, or <= 0 to enumerate the plans")
+		private int countSamples = 0;
+
 		@Option(name = "--switch-vars", usage = "CSP switching vars option", metaVar = "OPT")
 		private boolean switchVars = false;
 
 		@Option(name = "--threat-restriction", usage = "CSP threat restriction option")
 		private ThreatRestriction cspThreatRestriction = ThreatRestriction.BINDING;
 
+		@Option(name = "--threads", usage = "number of candidate links tested at once, > 1 to test links ahead of the policy")
+		private int threads = 1;
+
 		
 		public File getOutCspFile() {
 			return new File(this.outDir, "mktr-constraints.mzn");
@@ -23,6 +23,7 @@ package au.rmit.agtgrp.pplib.pp.mktr.policy;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import au.rmit.agtgrp.pplib.pddl.pct.*;
@@ -58,4 +59,10 @@ public class MinimiseThreats extends RelaxationPolicy {
 	protected PcLink getNextImpl() {
 		return super.options.get(0);
 	}
+
+	@Override
+	protected List<PcLink> getLookaheadImpl(int max) {
+		return getFirstOptions(max);
+	}
+
 }
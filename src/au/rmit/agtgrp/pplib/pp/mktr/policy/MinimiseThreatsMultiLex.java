@@ -68,5 +68,11 @@ public class MinimiseThreatsMultiLex extends MinimiseThreats {
 		System.out.println("No remaining PcLinks have unexplored canonical forms");
 		return null;
 	}
-	
+
+	@Override
+	protected List<PcLink> getLookaheadImpl(int max) {
+		// skipped links depend on which links have been tested
+		return null;
+	}
+
 }
@@ -21,6 +21,7 @@
 package au.rmit.agtgrp.pplib.pp.mktr.policy;
 
 import java.util.Collections;
+import java.util.List;
 
 import au.rmit.agtgrp.pplib.pddl.pct.CausalStructure;
 import au.rmit.agtgrp.pplib.pddl.pct.PcLink;
@@ -38,4 +39,9 @@ public class Random extends RelaxationPolicy {
 		return options.get(0);
 	}
 
+	@Override
+	protected List<PcLink> getLookaheadImpl(int max) {
+		return getFirstOptions(max);
+	}
+
 }
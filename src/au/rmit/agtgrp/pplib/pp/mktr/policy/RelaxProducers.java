@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -104,5 +105,9 @@ public class RelaxProducers extends RelaxationPolicy {
 		return super.options.get(0);
 	}
 
+	@Override
+	protected List<PcLink> getLookaheadImpl(int max) {
+		return getFirstOptions(max);
+	}
 
 }
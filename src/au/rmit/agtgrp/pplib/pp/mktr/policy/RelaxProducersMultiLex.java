@@ -83,5 +83,10 @@ public class RelaxProducersMultiLex extends RelaxProducers {
 		return null;
 	}
 
+	@Override
+	protected List<PcLink> getLookaheadImpl(int max) {
+		// skipped links depend on which links have been tested
+		return null;
+	}
 
 }
@@ -113,6 +113,27 @@ public abstract class RelaxationPolicy {
 	}
 	
 	protected abstract PcLink getNextImpl();
+
+	/**
+	 * Returns up to max links, starting with the one getNext will return,
+	 * which getNext would return in turn if each were failed, without changing
+	 * the state of the policy. Returns null if the policy cannot tell.
+	 */
+	public final List<PcLink> getLookahead(int max) {
+		if (options.isEmpty())
+			return new ArrayList<PcLink>();
+
+		return getLookaheadImpl(max);
+	}
+
+	protected List<PcLink> getLookaheadImpl(int max) {
+		return null;
+	}
+
+	// the lookahead of a policy which tries its options in order
+	protected final List<PcLink> getFirstOptions(int max) {
+		return new ArrayList<PcLink>(options.subList(0, Math.min(max, options.size())));
+	}
 	
 	public List<PcLink> getCurrentOptions() {
 		return options;
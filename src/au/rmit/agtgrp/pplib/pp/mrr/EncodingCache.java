@@ -0,0 +1,104 @@
+package au.rmit.agtgrp.pplib.pp.mrr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import au.rmit.agtgrp.pplib.pp.mrr.MrrMain.MrrEncoding;
+import au.rmit.agtgrp.pplib.pp.mrr.MrrMain.OptAlgorithm;
+import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AcyclicityOpt;
+import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AtMostOneOpt;
+import au.rmit.agtgrp.pplib.utils.FileUtils;
+
+/**
+ * An on-disk store of MRR encodings. Each encoding is kept in a file named
+ * by a hash of the contents of the domain, problem and plan files and of the
+ * options that change the encoding, so any number of runs over the same
+ * inputs, e.g., with different time limits, share one entry.
+ */
+class EncodingCache {
+
+	// change when the encoding changes, so old entries are not reused
+	private static final String VERSION = "mrr-encoding-3";
+
+	/**
+	 * The cache file for the inputs, or null if dir is null.
+	 */
+	static File getFile(File dir, File domainFile, File problemFile, File planFile,
+			OptAlgorithm algorithm, AcyclicityOpt acyclicity, AtMostOneOpt amoOpt, boolean simplify, int maxNegProducers) {
+		if (dir == null)
+			return null;
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			update(digest, VERSION);
+			for (File file : new File[] {domainFile, problemFile, planFile}) {
+				byte[] bytes = Files.readAllBytes(file.toPath());
+				update(digest, Integer.toString(bytes.length));
+				digest.update(bytes);
+			}
+			// the plan format is chosen by extension
+			String planName = planFile.getName();
+			update(digest, planName.substring(planName.lastIndexOf('.') + 1));
+			update(digest, algorithm.name());
+			update(digest, String.valueOf(acyclicity));
+			update(digest, String.valueOf(amoOpt));
+			update(digest, String.valueOf(simplify));
+			update(digest, String.valueOf(maxNegProducers));
+
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest.digest())
+				sb.append(String.format("%02x", b));
+			return new File(dir, sb.toString() + ".enc");
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String s) {
+		digest.update(s.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Returns the cached encoding, or null if there is none or it cannot be read.
+	 */
+	static MrrEncoding load(File file) {
+		if (file == null || !file.exists())
+			return null;
+		try {
+			return FileUtils.deserialize(file);
+		} catch (RuntimeException e) {
+			System.err.println("Could not read cached encoding " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes to a temporary file and renames it, so concurrent runs never
+	 * read a partial entry.
+	 */
+	static void store(File file, MrrEncoding encoding) {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (!dir.exists())
+			dir.mkdirs();
+		try {
+			File temp = File.createTempFile(file.getName(), ".tmp", dir);
+			try {
+				FileUtils.serialize(encoding, temp);
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			System.err.println("Could not cache encoding in " + file + ": " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,294 @@
+package au.rmit.agtgrp.pplib.pp.mrr;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.kohsuke.args4j.Option;
+
+import au.rmit.agtgrp.pplib.fol.expression.Expression;
+import au.rmit.agtgrp.pplib.fol.predicate.Atom;
+import au.rmit.agtgrp.pplib.fol.predicate.Literal;
+import au.rmit.agtgrp.pplib.fol.symbol.Type;
+import au.rmit.agtgrp.pplib.fol.symbol.Variable;
+import au.rmit.agtgrp.pplib.pddl.Operator;
+import au.rmit.agtgrp.pplib.pddl.Plan;
+import au.rmit.agtgrp.pplib.pddl.PddlProblem.PlanResult;
+import au.rmit.agtgrp.pplib.pddl.parser.PddlParser;
+import au.rmit.agtgrp.pplib.pp.mrr.MrrMain.MrrEncoder;
+import au.rmit.agtgrp.pplib.pp.mrr.MrrMain.MrrEncoding;
+import au.rmit.agtgrp.pplib.pp.mrr.MrrMain.MrrResult;
+import au.rmit.agtgrp.pplib.pp.mrr.MrrMain.OptAlgorithm;
+import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AcyclicityOpt;
+import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AtMostOneOpt;
+import au.rmit.agtgrp.pplib.sat.WeightedSatFormula.WcnfFormat;
+import au.rmit.agtgrp.pplib.sat.solver.SatSolver;
+import au.rmit.agtgrp.pplib.sat.solver.SatSolver.SatSolverResult;
+import au.rmit.agtgrp.pplib.utils.CmdLineOptions;
+import au.rmit.agtgrp.pplib.utils.FileUtils;
+
+/**
+ * Runs MRR over every domain/problem/plan triple in a manifest file, one
+ * triple per line. Each domain is parsed once, and plans are encoded, solved
+ * and decoded on a fixed pool of worker threads. Results are appended to a
+ * single CSV file as each plan finishes.
+ *
+ * Domains are run one at a time. The type hierarchy and the interning caches
+ * are global, so they are cleared and the domain's PDDL is parsed on the main
+ * thread once the previous domain's plans have all finished.
+ */
+public class MrrBatchMain {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		final MrrBatchOptions options = new MrrBatchOptions();
+		options.parse(args);
+
+		if (options.algorithms.isEmpty() || options.algorithms.contains(OptAlgorithm.EOG)) {
+			System.err.println("Algorithm not supported: " + options.algorithms);
+			System.exit(1);
+		}
+
+		Map<File, List<File[]>> byDomain = readManifest(options.manifest);
+		int nJobs = 0;
+		for (List<File[]> files : byDomain.values())
+			nJobs+=files.size();
+		System.out.println("Running " + nJobs + " plans with " + options.algorithms + " on " + options.threads + " threads");
+
+		if (options.popDir != null && !options.popDir.exists())
+			options.popDir.mkdirs();
+
+		final Writer out = new FileWriter(options.outFile);
+		out.write(MrrResult.header + "\n");
+		out.flush();
+
+		ExecutorService ex = Executors.newFixedThreadPool(options.threads);
+		try {
+			int firstId = 0;
+			for (Map.Entry<File, List<File[]>> entry : byDomain.entrySet()) {
+				List<MrrJob> jobs = loadDomain(entry.getKey(), entry.getValue(), firstId);
+				firstId+=jobs.size();
+
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (final MrrJob job : jobs) {
+					futures.add(ex.submit(new Runnable() {
+						@Override
+						public void run() {
+							MrrBatchMain.run(job, options, out);
+						}
+					}));
+				}
+
+				// the next domain replaces the type hierarchy these plans use
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						e.getCause().printStackTrace();
+					}
+				}
+			}
+			ex.shutdown();
+		} finally {
+			ex.shutdownNow();
+			out.close();
+		}
+	}
+
+	// groups the triples by domain so each domain is parsed once
+	static Map<File, List<File[]>> readManifest(File manifest) {
+		Map<File, List<File[]>> byDomain = new LinkedHashMap<File, List<File[]>>();
+		for (String line : FileUtils.readFile(manifest)) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			String[] split = line.split("\\s+");
+			if (split.length != 3)
+				throw new IllegalArgumentException("Expected 'domain problem plan' in manifest: " + line);
+
+			File domainFile = new File(split[0]).getAbsoluteFile();
+			if (!byDomain.containsKey(domainFile))
+				byDomain.put(domainFile, new ArrayList<File[]>());
+			byDomain.get(domainFile).add(new File[] {new File(split[1]), new File(split[2])});
+		}
+		return byDomain;
+	}
+
+	/**
+	 * Clears the global state left by the previous domain, then parses the
+	 * domain and each of its problem/plan pairs. Jobs whose plan could not be
+	 * parsed or validated have a null plan.
+	 */
+	static List<MrrJob> loadDomain(File domainFile, List<File[]> problemsAndPlans, int firstId) {
+		clearDomainState();
+
+		System.out.println("Loading domain " + domainFile);
+		PddlParser parser = new PddlParser(true, false);
+		boolean domainOk = true;
+		try {
+			parser.parse(domainFile);
+		} catch (Exception e) {
+			System.err.println("Error parsing " + domainFile + ": " + e.getMessage());
+			domainOk = false;
+		}
+
+		List<MrrJob> jobs = new ArrayList<MrrJob>();
+		for (File[] files : problemsAndPlans) {
+			MrrJob job = new MrrJob(firstId + jobs.size(), domainFile, files[0], files[1]);
+			jobs.add(job);
+			if (!domainOk)
+				continue;
+
+			try {
+				parser.parseProblem(job.problemFile);
+				parser.parsePlan(job.planFile);
+				PlanResult pr = parser.getProblem().validatePlan(parser.getPlan());
+				if (pr.isValid)
+					job.plan = parser.getPlan();
+				else
+					System.err.println("Input plan is not valid: " + job.planFile + "\n" + pr.message);
+			} catch (Exception e) {
+				System.err.println("Error parsing " + job.planFile + ": " + e.getMessage());
+				// the pddl4j parser keeps its errors, so start again from the domain
+				try {
+					parser.parse(domainFile);
+				} catch (Exception e2) {
+					domainOk = false;
+				}
+			}
+		}
+
+		return jobs;
+	}
+
+	static void clearDomainState() {
+		Type.clearTypeHierarchy();
+		Variable.clearCache();
+		Atom.clearCache();
+		Literal.clearCache();
+		Expression.clearCache();
+		Operator.clearCache();
+	}
+
+	private static void run(MrrJob job, MrrBatchOptions options, Writer out) {
+
+		MrrEncoder encoder = null;
+		if (job.plan != null)
+			encoder = new MrrEncoder(job.plan, options.algorithms, options.acyclicity, options.verbose, options.amoOpt, options.encThreads, options.simplify, options.maxNegProducers);
+
+		for (OptAlgorithm algorithm : options.algorithms) {
+			AcyclicityOpt acyclicity = options.acyclicity == null ? algorithm.acyc : options.acyclicity;
+			MrrResult result = MrrMain.initResult(job.domainFile, job.problemFile, job.planFile, algorithm, acyclicity, options.time);
+			PopModel pop = null;
+
+			if (job.plan == null) {
+				result.maxSatResult = SatSolverResult.ERROR;
+			} else {
+				try {
+					File cacheFile = EncodingCache.getFile(options.encCache, job.domainFile, job.problemFile, job.planFile, algorithm, acyclicity, options.amoOpt, options.simplify, options.maxNegProducers);
+					MrrEncoding encoding = encoder.encode(algorithm, cacheFile, result);
+					if (encoding != null) {
+						SatSolver solver = new SatSolver();
+						solver.setMaxSatPortfolio(MrrMain.parsePortfolio(options.maxSatPortfolio));
+						solver.setTempDir(options.tempDir);
+						pop = MrrMain.solve(job.plan, encoding, solver, options.wcnfFormat, result.maxTime - result.encTime, options.verbose, result);
+					}
+				} catch (Exception e) {
+					System.err.println("Error running " + job.planFile + " with " + algorithm);
+					e.printStackTrace();
+					result.maxSatResult = SatSolverResult.ERROR;
+				}
+			}
+
+			// pop files are only named by algorithm if there are several
+			String popName = job.id + "_" + (options.algorithms.size() > 1 ? algorithm + "_" : "") + job.planFile.getName() + ".pop";
+			try {
+				synchronized (out) {
+					out.write(result.toCsvRow());
+					out.flush();
+				}
+				if (pop != null && options.popDir != null)
+					FileUtils.writeFile(new File(options.popDir, popName), pop.toString());
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+
+			System.out.println("Finished " + job.planFile + " with " + algorithm + ": " + result.maxSatResult);
+		}
+	}
+
+	static class MrrJob {
+
+		final int id;
+		final File domainFile;
+		final File problemFile;
+		final File planFile;
+		Plan plan;
+
+		private MrrJob(int id, File domainFile, File problemFile, File planFile) {
+			this.id = id;
+			this.domainFile = domainFile;
+			this.problemFile = problemFile;
+			this.planFile = planFile;
+		}
+	}
+
+	public static class MrrBatchOptions extends CmdLineOptions {
+
+		@Option(name = "--manifest", usage = "file listing 'domain problem plan' triples, one per line", required = true)
+		public File manifest;
+
+		@Option(name = "--threads", usage = "number of worker threads")
+		public int threads = Runtime.getRuntime().availableProcessors();
+
+		@Option(name = "--time", usage = "maximum cpu time per plan (minutes)")
+		public double time = 30;
+
+		@Option(name = "--out-file", usage = "aggregated results csv", required = true)
+		public File outFile;
+
+		@Option(name = "--pop-dir", usage = "directory for pop files")
+		public File popDir = null;
+
+		@Option(name = "--wcnf-format", usage = "wcnf output format")
+		public WcnfFormat wcnfFormat = WcnfFormat.LEGACY;
+
+		@Option(name = "--alg", usage = "optimisation algorithm, repeat to run several on each plan")
+		public List<OptAlgorithm> algorithms = new ArrayList<OptAlgorithm>();
+
+		@Option(name = "--temp", usage = "parent directory for solver scratch directories")
+		public File tempDir = SatSolver.TEMP_DIR;
+
+		@Option(name = "--acyclicity", usage = "acyclicity encoding, overrides the algorithm's default")
+		public AcyclicityOpt acyclicity = null;
+
+		@Option(name = "--amo", usage = "at-most-one encoding of variable domains")
+		public AtMostOneOpt amoOpt = AtMostOneOpt.PAIRWISE;
+
+		@Option(name = "--simplify", usage = "remove duplicate and subsumed clauses from the WCNF")
+		public boolean simplify = false;
+
+		@Option(name = "--max-neg-producers", usage = "maximum number of initial state producers of each negative precondition, 0 for no limit")
+		public int maxNegProducers = 0;
+
+		@Option(name = "--enc-cache", usage = "directory in which encodings are cached and reused")
+		public File encCache = null;
+
+		@Option(name = "--enc-threads", usage = "number of threads used to build each WCNF")
+		public int encThreads = 1;
+
+		@Option(name = "--maxsat-portfolio", usage = "';'-separated MaxSAT solver commands to run in parallel on each plan")
+		public String maxSatPortfolio = SatSolver.DEFAULT_MAXSAT_COMMAND;
+
+	}
+
+}
@@ -2,7 +2,9 @@ package au.rmit.agtgrp.pplib.pp.mrr;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -27,12 +29,15 @@ import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.EqualityObj;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.PrecedenceObj;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AcyclicityOpt;
+import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AtMostOneOpt;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AsymmetryOpt;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.CausalStructureOpt;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.EqualityOpt;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.OutputOpt;
-import au.rmit.agtgrp.pplib.sat.SatFormula;
+import au.rmit.agtgrp.pplib.sat.SatModel;
+import au.rmit.agtgrp.pplib.sat.solver.SatSolver;
 import au.rmit.agtgrp.pplib.sat.WeightedSatFormula;
+import au.rmit.agtgrp.pplib.sat.WeightedSatFormula.WcnfFormat;
 import au.rmit.agtgrp.pplib.sat.solver.SatSolver.SatSolverResult;
 import au.rmit.agtgrp.pplib.utils.FileUtils;
 import au.rmit.agtgrp.pplib.utils.FormattingUtils;
@@ -45,7 +50,9 @@ public class MrrMain {
 	public static void main(String[] args) throws IOException, InterruptedException {
 		MrrOptions options = new MrrOptions();
 		options.parse(args);
-		if (options.decode)
+		if (options.pipeline)
+			pipeline(options);
+		else if (options.decode)
 			decode(options);
 		else
 			encode(options);
@@ -53,78 +60,29 @@ public class MrrMain {
 
 	private static void encode(MrrOptions options) throws IOException {
 
-		long start = System.currentTimeMillis();
-		long time = TimeUnit.SECONDS.toMillis((long) (options.time * 60));
-
-		MrrResult result = new MrrResult();
-		result.domainName = options.domainFile.getName();
-		result.problemName = options.problemFile.getName();
-		result.planFileName = options.planFile.getName();
-		result.algorithm = options.algorithm;
-		result.acycl = options.algorithm.acyc;
-		result.asymm = options.algorithm.asymm;
-		result.maxTime = time;
+		MrrResult result = initResult(options);
 
 		System.out.println("Loading PDDL");
 		Plan plan = options.getPlan();		
 
-		System.out.println("Lifting input plan");
-		PcPlan pcoPlan = CausalStructureFactory.getMinimalPcoPlan(plan, !options.algorithm.csOpt.equals(CausalStructureOpt.REORDER), options.algorithm.ground);
-
-		System.out.println("Encoding WCNF");
-		DirectedGraph<Operator<Variable>> customPrecGraph = null;
-		if (options.algorithm.equals(OptAlgorithm.REOG)) {
-			customPrecGraph = new Eog(plan).getExplanationBasedOrderGeneralisation();
-		} else if (plan instanceof ParallelPlan && !options.algorithm.csOpt.equals(CausalStructureOpt.REORDER)) {
-			System.out.println("Computing parallel plan ordering");
-			options.algorithm.csOpt = CausalStructureOpt.CUSTOM;
-			customPrecGraph = getParallelPlanOrdering((ParallelPlan) plan);	
-		}
-
-		CnfEncoderOptions opts = new CnfEncoderOptions(options.algorithm.asymm, options.algorithm.eq,
-				options.algorithm.acyc, options.algorithm.csOpt, ThreatRestriction.NONE, OutputOpt.PARTIAL_ORDER, 0,
-				options.algorithm.optTransClosure, options.verbose, customPrecGraph);	
-		MrrWcnfEncoder enc = new MrrWcnfEncoder(opts);	
-		WeightedSatFormula wcnf = enc.encodeConstraints(pcoPlan);
-
-		// save stats etc
-		result.nProps = wcnf.getNumProps();
-		result.nClauses = wcnf.getNumClauses();
-		result.nSymmProps = enc.getNumSymmetryProps();
-		result.nSymmClauses = enc.getNumSymmetryClauses();
-		result.encTime = System.currentTimeMillis() - start;
-		System.out.println("Encoding time: " + FormattingUtils.DF_3.format(((double) result.encTime)/1000));
-
-		if (result.encTime > time) {
-			System.out.println("Timed out after encoding");
-			result.maxSatResult = SatSolverResult.TIMEOUT;
+		MrrEncoding encoding = encode(plan, options.algorithm, options.acyclicity, options.verbose, options.amoOpt, options.encThreads, options.simplify, options.maxNegProducers, getCacheFile(options), result);
+		if (encoding == null) {
 			FileUtils.writeFile(options.outFile, result.toString());
 			return;
 		}
 
-		Map<PrecedenceObj, Integer> precPropMap = enc.getPropositionMap().getPrecedencePropositionMap();
-		Map<Integer, PrecedenceObj> propPrecMap = new HashMap<Integer, PrecedenceObj>();		
-		for (PrecedenceObj prec : precPropMap.keySet())
-			propPrecMap.put(precPropMap.get(prec), prec);
-
-		Bijection<EqualityObj, Integer> eqPropMap = enc.getPropositionMap().getVarEqualityPropositionMap();
-		Map<Integer, EqualityObj> propBindMap = new HashMap<Integer, EqualityObj>();
-		for (Entry<EqualityObj, Integer> entry : eqPropMap.entrySet()) {
-			propBindMap.put(entry.getValue(), entry.getKey());
-		}
-
 		// save wcnf and serialized data
 		System.out.println("Writing weighted CNF to " + options.wcnfFile);
-		wcnf.writeToFile(options.wcnfFile);	
-		FileUtils.serialize(propPrecMap, new File(options.wcnfFile.getAbsolutePath() + ".prec.dat"));
-		FileUtils.serialize(propBindMap, new File(options.wcnfFile.getAbsolutePath() + ".bind.dat"));
+		encoding.wcnf.setFormat(options.wcnfFormat);
+		encoding.wcnf.writeToFile(options.wcnfFile);	
+		FileUtils.serialize(encoding.propPrecMap, new File(options.wcnfFile.getAbsolutePath() + ".prec.dat"));
+		FileUtils.serialize(encoding.propBindMap, new File(options.wcnfFile.getAbsolutePath() + ".bind.dat"));
 		
 		// save stats and options
 		FileUtils.writeFile(options.outFile, result.toString());
 	}
 
-
-	private static void decode(MrrOptions options) {
+	private static void decode(MrrOptions options) throws IOException {
 		System.out.println("Loading PDDL");
 		Plan plan = options.getPlan();
 
@@ -133,36 +91,281 @@ public class MrrMain {
 		Map<Integer, PrecedenceObj> propPrecMap = FileUtils.deserialize(new File(options.wcnfFile.getAbsolutePath() + ".prec.dat"));		
 		Map<Integer, EqualityObj> propBindMap = FileUtils.deserialize(new File(options.wcnfFile.getAbsolutePath() + ".bind.dat"));
 		
+		SatModel model = SatModel.load(options.model, options.wcnfFormat == WcnfFormat.MODERN);
+		if (model == null)
+			throw new IllegalArgumentException("No model found in " + options.model);
+		
+		MrrResult result = MrrResult.parse(options.outFile);
+		PopModel pop = decode(plan, model, propPrecMap, propBindMap, result);
+		
+		if (options.verbose)
+			System.out.println(result.toString());
+
+		FileUtils.writeFile(options.outFile, result.toString());
+		FileUtils.writeFile(getPopFile(options), pop.toString());
+	}
+	
+	/**
+	 * Encodes, solves and decodes in this process, keeping the formula and
+	 * proposition maps in memory. Unlike mrr.py, the WCNF is not run through
+	 * a MaxSAT preprocessor before solving.
+	 */
+	private static void pipeline(MrrOptions options) throws IOException {
+		
+		long start = System.currentTimeMillis();
+		MrrResult result = initResult(options);
+		
+		System.out.println("Loading PDDL");
+		Plan plan = options.getPlan();	
+		
+		MrrEncoding encoding = encode(plan, options.algorithm, options.acyclicity, options.verbose, options.amoOpt, options.encThreads, options.simplify, options.maxNegProducers, getCacheFile(options), result);
+		if (encoding == null) {
+			FileUtils.writeFile(options.outFile, result.toString());
+			return;
+		}
+		
+		SatSolver solver = new SatSolver();
+		solver.setMaxSatPortfolio(options.getMaxSatPortfolio());
+		solver.setTempDir(options.tempDir);
+		PopModel pop = solve(plan, encoding, solver, options.wcnfFormat, result.maxTime - (System.currentTimeMillis() - start), options.verbose, result);
+		if (pop != null && options.verbose)
+			System.out.println(result.toString());
+		
+		FileUtils.writeFile(options.outFile, result.toString());
+		if (pop != null)
+			FileUtils.writeFile(getPopFile(options), pop.toString());
+	}
+	
+	private static MrrResult initResult(MrrOptions options) {
+		return initResult(options.domainFile, options.problemFile, options.planFile, options.algorithm, options.acyclicity, options.time);
+	}
+	
+	static MrrResult initResult(File domainFile, File problemFile, File planFile, OptAlgorithm algorithm, AcyclicityOpt acyclicity, double time) {
+		MrrResult result = new MrrResult();
+		result.domainName = domainFile.getName();
+		result.problemName = problemFile.getName();
+		result.planFileName = planFile.getName();
+		result.algorithm = algorithm;
+		result.acycl = acyclicity;
+		result.asymm = algorithm.asymm;
+		result.maxTime = TimeUnit.SECONDS.toMillis((long) (time * 60));
+		return result;
+	}
+	
+	private static File getCacheFile(MrrOptions options) {
+		return EncodingCache.getFile(options.encCache, options.domainFile, options.problemFile, options.planFile, options.algorithm, options.acyclicity, options.amoOpt, options.simplify, options.maxNegProducers);
+	}
+
+	private static File getPopFile(MrrOptions options) {
+		return new File(options.outFile.toString().replaceAll(".csv", ".pop"));
+	}
+	
+	/**
+	 * Returns null if the time limit was reached during encoding.
+	 */
+	static MrrEncoding encode(Plan plan, OptAlgorithm algorithm, AcyclicityOpt acyclicity, boolean verbose, AtMostOneOpt amoOpt, int encThreads, boolean simplify, int maxNegProducers, File cacheFile, MrrResult result) {
+		MrrEncoder encoder = new MrrEncoder(plan, Collections.singletonList(algorithm), acyclicity, verbose, amoOpt, encThreads, simplify, maxNegProducers);
+		return encoder.encode(algorithm, cacheFile, result);
+	}
+
+	/**
+	 * Encodes a plan for each of a list of algorithms, in list order.
+	 * Adjacent algorithms whose formulas differ only in their symmetry
+	 * breaking constraints, e.g., MRR, MRR_OPSB and MRR_CSSB, share one lifted
+	 * plan and one encoding of the rest of the formula.
+	 */
+	static class MrrEncoder {
+
+		private final Plan plan;
+		private final List<OptAlgorithm> remaining;
+		private final AcyclicityOpt acyclicity;
+		private final boolean verbose;
+		private final AtMostOneOpt amoOpt;
+		private final int encThreads;
+		private final boolean simplify;
+		private final int maxNegProducers;
+
+		private OptAlgorithm sharedAlgorithm;
+		private MrrWcnfEncoder sharedEncoder;
+		private long sharedTime;
+
+		MrrEncoder(Plan plan, List<OptAlgorithm> algorithms, AcyclicityOpt acyclicity, boolean verbose, AtMostOneOpt amoOpt, int encThreads, boolean simplify, int maxNegProducers) {
+			this.plan = plan;
+			this.remaining = new ArrayList<OptAlgorithm>(algorithms);
+			this.acyclicity = acyclicity;
+			this.verbose = verbose;
+			this.amoOpt = amoOpt;
+			this.encThreads = encThreads;
+			this.simplify = simplify;
+			this.maxNegProducers = maxNegProducers;
+		}
+
+		/**
+		 * Returns null if the time limit was reached during encoding.
+		 */
+		MrrEncoding encode(OptAlgorithm algorithm, File cacheFile, MrrResult result) {
+
+			long start = System.currentTimeMillis();
+			remaining.remove(algorithm);
+
+			MrrEncoding cached = EncodingCache.load(cacheFile);
+			if (cached != null) {
+				System.out.println("Loaded encoding from " + cacheFile);
+				result.nProps = cached.wcnf.getNumProps();
+				result.nClauses = cached.wcnf.getNumClauses();
+				result.nSymmProps = cached.nSymmProps;
+				result.nSymmClauses = cached.nSymmClauses;
+				result.encTime = System.currentTimeMillis() - start;
+				return cached;
+			}
+
+			boolean keepShared = !remaining.isEmpty() && remaining.get(0).sharesEncoding(algorithm);
+
+			// cleared first, so a failed encoding is not reused
+			MrrWcnfEncoder enc = sharedEncoder;
+			OptAlgorithm encoded = sharedAlgorithm;
+			sharedAlgorithm = null;
+			sharedEncoder = null;
+
+			WeightedSatFormula wcnf;
+			if (enc != null && encoded.sharesEncoding(algorithm)) {
+				System.out.println("Reusing WCNF encoded for " + encoded);
+				wcnf = enc.encodeSymmetryBreaking(algorithm.asymm, keepShared);
+				start-=sharedTime; // the shared encoding counts towards each algorithm's time
+			} else {
+				enc = null; // so any other shared formula can be collected
+
+				System.out.println("Lifting input plan");
+				PcPlan pcoPlan = CausalStructureFactory.getMinimalPcoPlan(plan, !algorithm.csOpt.equals(CausalStructureOpt.REORDER), algorithm.ground, maxNegProducers);
+
+				System.out.println("Encoding WCNF");
+				enc = new MrrWcnfEncoder(getEncoderOptions(algorithm));
+				if (keepShared) {
+					enc.encodeSharedConstraints(pcoPlan);
+					sharedTime = System.currentTimeMillis() - start;
+					wcnf = enc.encodeSymmetryBreaking(algorithm.asymm, true);
+				} else
+					wcnf = enc.encodeConstraints(pcoPlan);
+			}
+
+			if (keepShared) {
+				sharedAlgorithm = algorithm;
+				sharedEncoder = enc;
+			}
+
+			if (simplify) {
+				System.out.println("Simplifying WCNF");
+				System.out.println("Removed " + wcnf.simplify() + " clauses");
+			}
+
+			// save stats etc
+			result.nProps = wcnf.getNumProps();
+			result.nClauses = wcnf.getNumClauses();
+			result.nSymmProps = enc.getNumSymmetryProps();
+			result.nSymmClauses = enc.getNumSymmetryClauses();
+			result.encTime = System.currentTimeMillis() - start;
+			System.out.println("Encoding time: " + FormattingUtils.DF_3.format(((double) result.encTime)/1000));
+
+			if (result.encTime > result.maxTime) {
+				System.out.println("Timed out after encoding");
+				result.maxSatResult = SatSolverResult.TIMEOUT;
+				return null;
+			}
+
+			Map<PrecedenceObj, Integer> precPropMap = enc.getPropositionMap().getPrecedencePropositionMap();
+			Map<Integer, PrecedenceObj> propPrecMap = new HashMap<Integer, PrecedenceObj>();		
+			for (PrecedenceObj prec : precPropMap.keySet())
+				propPrecMap.put(precPropMap.get(prec), prec);
+
+			Bijection<EqualityObj, Integer> eqPropMap = enc.getPropositionMap().getVarEqualityPropositionMap();
+			Map<Integer, EqualityObj> propBindMap = new HashMap<Integer, EqualityObj>();
+			for (Entry<EqualityObj, Integer> entry : eqPropMap.entrySet()) {
+				propBindMap.put(entry.getValue(), entry.getKey());
+			}
+			
+			MrrEncoding encoding = new MrrEncoding(wcnf, propPrecMap, propBindMap, result.nSymmProps, result.nSymmClauses);
+			if (cacheFile != null) {
+				wcnf.trimToSize();
+				EncodingCache.store(cacheFile, encoding);
+			}
+			return encoding;
+		}
+
+		private CnfEncoderOptions getEncoderOptions(OptAlgorithm algorithm) {
+			DirectedGraph<Operator<Variable>> customPrecGraph = null;
+			CausalStructureOpt csOpt = algorithm.csOpt;
+			if (algorithm.equals(OptAlgorithm.REOG)) {
+				customPrecGraph = new Eog(plan).getExplanationBasedOrderGeneralisation();
+			} else if (plan instanceof ParallelPlan && !csOpt.equals(CausalStructureOpt.REORDER)) {
+				System.out.println("Computing parallel plan ordering");
+				csOpt = CausalStructureOpt.CUSTOM;
+				customPrecGraph = getParallelPlanOrdering((ParallelPlan) plan);	
+			}
+
+			return new CnfEncoderOptions(algorithm.asymm, algorithm.eq,
+					acyclicity == null ? algorithm.acyc : acyclicity, csOpt, ThreatRestriction.NONE, OutputOpt.PARTIAL_ORDER, 0,
+					algorithm.optTransClosure, verbose, customPrecGraph, amoOpt, encThreads);	
+		}
+	}
+	
+	/**
+	 * Solves the encoding with the MaxSAT solver and decodes the best model
+	 * found. Returns null if no model was found.
+	 */
+	static PopModel solve(Plan plan, MrrEncoding encoding, SatSolver solver, WcnfFormat format, long timeout, boolean verbose, MrrResult result) {
+		
+		System.out.println("Solving MaxSAT");
+		long start = System.currentTimeMillis();
+		encoding.wcnf.setFormat(format);
+		solver.solveWeighted(encoding.wcnf, timeout, verbose);
+		result.maxSatTime = System.currentTimeMillis() - start;
+		result.maxSatResult = solver.getResult();
+		result.maxSatConfig = solver.getWinningCommand();
+		System.out.println("MaxSAT result: " + result.maxSatResult);
+		if (solver.getMaxSatPortfolio().size() > 1)
+			System.out.println("MaxSAT config: " + result.maxSatConfig);
+		
+		int[] soln = null;
+		for (int[] s : solver.getSolutions()) // last model is the best
+			soln = s;
+		
+		if (soln == null || (result.maxSatResult != SatSolverResult.OPTIMAL && result.maxSatResult != SatSolverResult.SATISFIABLE)) {
+			System.out.println("MaxSAT failed");
+			return null;
+		}
+		
+		System.out.println("Decoding model");
+		return decode(plan, SatModel.fromLiterals(soln), encoding.propPrecMap, encoding.propBindMap, result);
+	}
+	
+	private static PopModel decode(Plan plan, SatModel model, Map<Integer, PrecedenceObj> propPrecMap, 
+			Map<Integer, EqualityObj> propBindMap, MrrResult result) {
+		
 		// get all ordering constraints
 		DirectedGraph<Operator<Variable>> precGraph = new DirectedGraph<Operator<Variable>>();
 
 		Set<Variable> initVars = new HashSet<Variable>(plan.getInitialAction().getParameters());
 		Map<Variable, Constant> bindings = new HashMap<Variable, Constant>(plan.getSubstitution().getMap()); // init to original
 
-		int[] soln = SatFormula.loadModel(options.model);
-		for (int prop : soln) {
-			if (prop > 0) {
-				if (propPrecMap.containsKey(prop)) {
-					PrecedenceObj prec = propPrecMap.get(prop);	
-					if (!prec.getFirst().equals(plan.getInitialAction()) && !prec.getSecond().equals(plan.getGoalAction())) {
-						GraphUtils.addAndCloseTransitive(precGraph, prec.getFirst(), prec.getSecond());
-					}
-				} else if (propBindMap.containsKey(prop)){
-					EqualityObj bind = propBindMap.get(prop);
-					if (initVars.contains(bind.getFirst())) {
-						Constant c = plan.getSubstitution().apply(bind.getFirst());
-						bindings.put(bind.getSecond(), c);						
-					}
-					else if (initVars.contains(bind.getSecond())) {
-						Constant c = plan.getSubstitution().apply(bind.getSecond());
-						bindings.put(bind.getFirst(), c);
-					}
+		for (int prop = model.nextTrueProp(1); prop > 0; prop = model.nextTrueProp(prop+1)) {
+			if (propPrecMap.containsKey(prop)) {
+				PrecedenceObj prec = propPrecMap.get(prop);	
+				if (!prec.getFirst().equals(plan.getInitialAction()) && !prec.getSecond().equals(plan.getGoalAction())) {
+					GraphUtils.addAndCloseTransitive(precGraph, prec.getFirst(), prec.getSecond());
+				}
+			} else if (propBindMap.containsKey(prop)){
+				EqualityObj bind = propBindMap.get(prop);
+				if (initVars.contains(bind.getFirst())) {
+					Constant c = plan.getSubstitution().apply(bind.getFirst());
+					bindings.put(bind.getSecond(), c);						
+				}
+				else if (initVars.contains(bind.getSecond())) {
+					Constant c = plan.getSubstitution().apply(bind.getSecond());
+					bindings.put(bind.getFirst(), c);
 				}
 			}
 		}
 		
-		MrrResult result = MrrResult.parse(options.outFile);
-		
 		int relSize = precGraph.getAllEdges().size();
 		System.out.println("Order relation size: " + relSize);
 
@@ -172,16 +375,19 @@ public class MrrMain {
 
 		result.relSize = relSize;
 		result.flex = flex;
-		if (options.verbose)
-			System.out.println(result.toString());
-
-		FileUtils.writeFile(options.outFile, result.toString());
 
 		// print out pop
 		GraphUtils.transitiveReduction(precGraph, precGraph);
-		File popFile = new File(options.outFile.toString().replaceAll(".csv", ".pop"));
-		FileUtils.writeFile(popFile, new PopModel(plan.getPlanSteps(), precGraph, bindings).toString());
-		
+		return new PopModel(plan.getPlanSteps(), precGraph, bindings);
+	}
+	
+	static List<String> parsePortfolio(String portfolio) {
+		List<String> commands = new ArrayList<String>();
+		for (String command : portfolio.split(";")) {
+			if (!command.trim().isEmpty())
+				commands.add(command.trim());
+		}
+		return commands;
 	}
 	
 	public static DirectedGraph<Operator<Variable>> getParallelPlanOrdering(ParallelPlan pplan) {
@@ -212,9 +418,29 @@ public class MrrMain {
 	}
 
 
+	static class MrrEncoding implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+
+		private final WeightedSatFormula wcnf;
+		private final Map<Integer, PrecedenceObj> propPrecMap;
+		private final Map<Integer, EqualityObj> propBindMap;
+		private final int nSymmProps;
+		private final int nSymmClauses;
+		
+		private MrrEncoding(WeightedSatFormula wcnf, Map<Integer, PrecedenceObj> propPrecMap, Map<Integer, EqualityObj> propBindMap,
+				int nSymmProps, int nSymmClauses) {
+			this.wcnf = wcnf;
+			this.propPrecMap = propPrecMap;
+			this.propBindMap = propBindMap;
+			this.nSymmProps = nSymmProps;
+			this.nSymmClauses = nSymmClauses;
+		}
+	}
+
 	public static class MrrResult {
 
-		public static String header = "domain_name, problem_name, plan_file, alg, acyc, asymm, time_limit, enc_time, prepro_time, maxsat_time, n_props, n_clauses, n_symm_props, n_symm_clauses, maxsat_result, pop_size, pop_flex";
+		public static String header = "domain_name, problem_name, plan_file, alg, acyc, asymm, time_limit, enc_time, prepro_time, maxsat_time, n_props, n_clauses, n_symm_props, n_symm_clauses, maxsat_result, pop_size, pop_flex, maxsat_config";
 
 		public static MrrResult parse(File file) {
 			List<String> lines = new ArrayList<String>();
@@ -242,6 +468,8 @@ public class MrrMain {
 				result.maxSatResult = split[14].equals("null") || split[14].equals("None")|| split[14].isEmpty() ? null : SatSolverResult.valueOf(split[14].trim());
 				result.relSize = Integer.valueOf(split[15].trim());
 				result.flex = Double.valueOf(split[16].trim());
+				if (split.length > 17 && !split[17].trim().isEmpty() && !split[17].trim().equals("null"))
+					result.maxSatConfig = split[17].trim();
 			}
 
 			return result;
@@ -264,11 +492,15 @@ public class MrrMain {
 		public int relSize = -1;
 		public SatSolverResult maxSatResult;	
 		public double flex = -1;
+		public String maxSatConfig;
 
 		@Override
 		public String toString() {
-			String csv = header + "\n";
-			csv+=domainName +",";
+			return header + "\n" + toCsvRow();
+		}
+		
+		public String toCsvRow() {
+			String csv = domainName +",";
 			csv+=problemName + ",";
 			csv+=planFileName + ",";
 			csv+=algorithm + ",";
@@ -284,7 +516,8 @@ public class MrrMain {
 			csv+=nSymmClauses + ",";
 			csv+=maxSatResult + ",";
 			csv+=relSize + ",";
-			csv+=FormattingUtils.DF_3.format(flex) + "\n";
+			csv+=FormattingUtils.DF_3.format(flex) + ",";
+			csv+=(maxSatConfig == null ? "" : maxSatConfig.replace(',', ';')) + "\n";
 
 			return csv;
 		}	
@@ -313,7 +546,7 @@ public class MrrMain {
 		public final boolean ground;
 		public AsymmetryOpt asymm;
 		public EqualityOpt eq;
-		public AcyclicityOpt acyc;
+		public final AcyclicityOpt acyc;
 		public CausalStructureOpt csOpt;
 		public boolean optTransClosure;
 
@@ -325,6 +558,15 @@ public class MrrMain {
 			this.acyc = acyc;
 			this.optTransClosure = optTransClosure;
 		}
+
+		/**
+		 * True iff the two algorithms' formulas differ only in their symmetry
+		 * breaking constraints.
+		 */
+		public boolean sharesEncoding(OptAlgorithm other) {
+			return ground == other.ground && csOpt.equals(other.csOpt) && eq.equals(other.eq) 
+					&& acyc.equals(other.acyc) && optTransClosure == other.optTransClosure;
+		}
 	}
 
 	public static class MrrOptions extends PddlCmdLineOptions {
@@ -336,6 +578,8 @@ public class MrrMain {
 				System.err.println("EOG algorithm not supported");
 				System.exit(1);
 			}
+			if (this.algorithm != null && this.acyclicity == null)
+				this.acyclicity = this.algorithm.acyc;
 		}
 
 		@Option(name = "--time", usage = "maximum cpu time (minutes)")
@@ -347,6 +591,9 @@ public class MrrMain {
 		@Option(name = "--wcnf-file", usage = "output wcnf file")
 		public File wcnfFile = null;
 
+		@Option(name = "--wcnf-format", usage = "wcnf output format")
+		public WcnfFormat wcnfFormat = WcnfFormat.LEGACY;
+
 		@Option(name = "--alg", usage = "optimisation algorithm")
 		public OptAlgorithm algorithm = null;
 
@@ -359,6 +606,37 @@ public class MrrMain {
 		@Option(name = "--model-file", usage = "model file")
 		public File model = null;	
 		
+		@Option(name = "--pipeline", usage = "encode, solve and decode in a single process", metaVar = "OPT")
+		public boolean pipeline = false;
+		
+		@Option(name = "--temp", usage = "parent directory for solver scratch directories")
+		public File tempDir = SatSolver.TEMP_DIR;
+
+		@Option(name = "--acyclicity", usage = "acyclicity encoding, overrides the algorithm's default")
+		public AcyclicityOpt acyclicity = null;
+
+		@Option(name = "--amo", usage = "at-most-one encoding of variable domains")
+		public AtMostOneOpt amoOpt = AtMostOneOpt.PAIRWISE;
+
+		@Option(name = "--simplify", usage = "remove duplicate and subsumed clauses from the WCNF")
+		public boolean simplify = false;
+
+		@Option(name = "--max-neg-producers", usage = "maximum number of initial state producers of each negative precondition, 0 for no limit")
+		public int maxNegProducers = 0;
+
+		@Option(name = "--enc-cache", usage = "directory in which encodings are cached and reused")
+		public File encCache = null;
+
+		@Option(name = "--enc-threads", usage = "number of threads used to build the WCNF")
+		public int encThreads = Runtime.getRuntime().availableProcessors();
+		
+		@Option(name = "--maxsat-portfolio", usage = "';'-separated MaxSAT solver commands to run in parallel, " + SatSolver.SECONDS + " is replaced by the time limit")
+		public String maxSatPortfolio = SatSolver.DEFAULT_MAXSAT_COMMAND;
+		
+		public List<String> getMaxSatPortfolio() {
+			return parsePortfolio(maxSatPortfolio);
+		}
+		
 	}
 
 }
@@ -5,6 +5,8 @@ import au.rmit.agtgrp.pplib.pddl.Operator;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.PcPlan;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.ClToSatEncoder;
+import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AsymmetryOpt;
+import au.rmit.agtgrp.pplib.sat.SatFormula;
 import au.rmit.agtgrp.pplib.sat.WeightedSatFormula;
 
 public class MrrWcnfEncoder extends ClToSatEncoder {
@@ -20,8 +22,18 @@ public class MrrWcnfEncoder extends ClToSatEncoder {
 	}
 	
 	@Override
-	protected void encode() {
-		super.encode();
+	public WeightedSatFormula encodeSharedConstraints(PcPlan plan) {
+		return (WeightedSatFormula) super.encodeSharedConstraints(plan);
+	}
+	
+	@Override
+	public WeightedSatFormula encodeSymmetryBreaking(AsymmetryOpt asymm, boolean keepShared) {
+		return (WeightedSatFormula) super.encodeSymmetryBreaking(asymm, keepShared);
+	}
+	
+	@Override
+	protected void encodeShared() {
+		super.encodeShared();
 		buildSoftOrderingConstraints();
 	}
 	
@@ -29,6 +41,11 @@ public class MrrWcnfEncoder extends ClToSatEncoder {
 	protected WeightedSatFormula initSatFormula() {
 		return new WeightedSatFormula(Integer.MAX_VALUE);
 	}
+	
+	@Override
+	protected WeightedSatFormula copySatFormula(SatFormula formula) {
+		return new WeightedSatFormula((WeightedSatFormula) formula);
+	}
 
 	private void buildSoftOrderingConstraints() {
 		WeightedSatFormula weightedSat = (WeightedSatFormula) super.satFormula;
@@ -39,10 +39,30 @@ public abstract class InstantiatablePartialPlan<T> extends PartialPlan<T> {
 		public final boolean timedOut;
 		public final long runtime;
 
+		// for estimates, the estimate and its 95% confidence interval, otherwise nSolutions
+		public final boolean estimated;
+		public final double estimate;
+		public final double lowerBound;
+		public final double upperBound;
+
 		public PlanCountResult(int nSolutions, boolean timedOut, long runtime) {
 			this.nSolutions = nSolutions;
 			this.timedOut = timedOut;
 			this.runtime = runtime;
+			estimated = false;
+			estimate = nSolutions;
+			lowerBound = nSolutions;
+			upperBound = nSolutions;
+		}
+
+		public PlanCountResult(double estimate, double lowerBound, double upperBound, boolean timedOut, long runtime) {
+			this.nSolutions = (int) Math.min(Math.round(estimate), Integer.MAX_VALUE);
+			this.timedOut = timedOut;
+			this.runtime = runtime;
+			estimated = true;
+			this.estimate = estimate;
+			this.lowerBound = lowerBound;
+			this.upperBound = upperBound;
 		}
 	}
 
@@ -13,6 +13,7 @@ import au.rmit.agtgrp.pplib.csp.PartitionedExpressionCsp;
 import au.rmit.agtgrp.pplib.csp.solver.CspSolutionSet;
 import au.rmit.agtgrp.pplib.csp.solver.CspSolver;
 import au.rmit.agtgrp.pplib.csp.solver.GeCodeInterface;
+import au.rmit.agtgrp.pplib.csp.solver.SolutionCountEstimator;
 import au.rmit.agtgrp.pplib.csp.solver.ZincFormatter;
 import au.rmit.agtgrp.pplib.fol.Substitution;
 import au.rmit.agtgrp.pplib.fol.function.Constant;
@@ -35,10 +36,21 @@ public class CspPartialPlan extends InstantiatablePartialPlan<ExpressionCsp> {
 	}
 	
 	private final CspSolver cspSolver = new GeCodeInterface();
-	private final TreewidthCalculator twCalc = new TreewidthCalculator();
+	private volatile CspSolver planSolver;
+	private final SolutionCountEstimator estimator = new SolutionCountEstimator();
+	private final TreewidthCalculator twCalc;
 	
 	public CspPartialPlan(ExpressionCsp csp, PddlProblem problem, Collection<Operator<Variable>> planSteps, Substitution<Constant> initSub, Substitution<Constant> goalSub) {
+		this(csp, problem, planSteps, initSub, goalSub, new TreewidthCalculator());
+	}
+
+	/**
+	 * As above, where twCalc is shared with plans whose CSPs are similar, so
+	 * their treewidth bounds can be reused.
+	 */
+	public CspPartialPlan(ExpressionCsp csp, PddlProblem problem, Collection<Operator<Variable>> planSteps, Substitution<Constant> initSub, Substitution<Constant> goalSub, TreewidthCalculator twCalc) {
 		super(problem, planSteps, initSub, goalSub, csp);
+		this.twCalc = twCalc;
 	}
 	
 	@Override
@@ -53,25 +65,52 @@ public class CspPartialPlan extends InstantiatablePartialPlan<ExpressionCsp> {
 
 	@Override
 	public PlanCountResult countSolutions(long timeout) throws InterruptedException {
-		cspSolver.countSolutions(super.constraints, TimeUnit.MINUTES.toMillis(timeout));
-		return new PlanCountResult(cspSolver.getSolutionCount(), cspSolver.timedOut(), (long) cspSolver.getRuntime());
+		try {
+			cspSolver.countSolutions(super.constraints, TimeUnit.MINUTES.toMillis(timeout));
+			return new PlanCountResult(cspSolver.getSolutionCount(), cspSolver.timedOut(), (long) cspSolver.getRuntime());
+		} finally {
+			cspSolver.close(); // no solutions file to keep
+		}
+	}
+
+	/**
+	 * Estimates the number of solutions from at most nSamples samples, rather
+	 * than enumerating them.
+	 */
+	public PlanCountResult estimateSolutions(int nSamples, long timeout) throws InterruptedException {
+		estimator.estimate(super.constraints, nSamples, TimeUnit.MINUTES.toMillis(timeout));
+		return new PlanCountResult(estimator.getEstimate(), estimator.getLowerBound(), estimator.getUpperBound(),
+				estimator.timedOut(), estimator.getRuntime());
 	}
 
 	@Override
 	public PlanGenerationResult getPlans(int max, long timeout) throws InterruptedException {
-		cspSolver.getNSolutions(super.constraints, max, timeout);
-		CspSolutionSet cspSols = cspSolver.getSolutions();
-		if (super.constraints instanceof PartitionedExpressionCsp) {
-			cspSols = ((PartitionedExpressionCsp) super.constraints).departitionSolutions(cspSols);
+		// the plan set reads its solutions from the solver's scratch dir, so
+		// each call gets its own solver, which is closed with the plan set
+		CspSolver planSolver = new GeCodeInterface();
+		this.planSolver = planSolver;
+		try {
+			planSolver.getNSolutions(super.constraints, max, timeout);
+			CspSolutionSet cspSols = planSolver.getSolutions();
+			if (super.constraints instanceof PartitionedExpressionCsp) {
+				cspSols = ((PartitionedExpressionCsp) super.constraints).departitionSolutions(cspSols);
+			}
+			PlanSet partialPlan = new PlanSubstitutionSet(this, cspSols, cspSols.getSolutionCount(), planSolver);
+			return new PlanGenerationResult(partialPlan, planSolver.timedOut(), (long) planSolver.getRuntime());
+		} catch (InterruptedException | RuntimeException e) {
+			planSolver.close();
+			throw e;
 		}
-		PlanSet partialPlan = new PlanSubstitutionSet(this, cspSols, cspSols.getSolutionCount());
-		return new PlanGenerationResult(partialPlan, cspSolver.timedOut(), (long) cspSolver.getRuntime());
 	}
 
 	@Override
 	public void cancel() {
 		twCalc.cancel();
 		cspSolver.cancel();
+		CspSolver planSolver = this.planSolver;
+		if (planSolver != null)
+			planSolver.cancel();
+		estimator.cancel();
 	}
 
 	@Override
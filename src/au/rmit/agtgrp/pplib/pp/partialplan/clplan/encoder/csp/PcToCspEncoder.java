@@ -39,10 +39,10 @@ import au.rmit.agtgrp.pplib.fol.symbol.Type;
 import au.rmit.agtgrp.pplib.fol.symbol.Variable;
 import au.rmit.agtgrp.pplib.pddl.Operator;
 import au.rmit.agtgrp.pplib.pddl.pct.*;
-import au.rmit.agtgrp.pplib.pp.partialplan.InstantiatablePartialPlan;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.PcPlan;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.ConstraintEncoder;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.optimiser.CspOptimiser;
+import au.rmit.agtgrp.pplib.utils.collections.graph.treewidth.TreewidthCalculator;
 
 public class PcToCspEncoder extends ConstraintEncoder<ExpressionCsp, CspEncoderOptions> {
 
@@ -76,7 +76,7 @@ public class PcToCspEncoder extends ConstraintEncoder<ExpressionCsp, CspEncoderO
 		for (List<Variable> dom : csp.getConstraints().keySet()) {
 			for (Expression<Variable> cons : csp.getConstraints(dom)) {
 				if (cons.isLiteral() && AllDifferent.isAllDifferentLiteral(cons.getLiteral())) {
-					csp.getConstraints(dom).remove(cons);
+					csp.removeConstraint(cons);
 					return;
 				}
 			}
@@ -122,14 +122,22 @@ public class PcToCspEncoder extends ConstraintEncoder<ExpressionCsp, CspEncoderO
 	protected Map<Operator<Variable>, Variable> opVarMap;
 	protected Map<PcLink, Variable> pcLinkVarMap;
 
+	// kept from the last encoding, so it can be updated
+	protected ThreatMap threatMap;
+	protected Map<PcLink, Expression<Variable>> pcLinkConstraints;
+	protected Map<Consumer, Expression<Variable>> consumerConstraints;
+
+	// successive CSPs differ slightly, so share treewidth bounds
+	protected final TreewidthCalculator twCalc = new TreewidthCalculator();
+
 	public PcToCspEncoder(CspEncoderOptions options) {
 		super(options);
 	}
 
 	@Override
-	public InstantiatablePartialPlan<ExpressionCsp> encodeAsPartialPlan(PcPlan plan) {
+	public CspPartialPlan encodeAsPartialPlan(PcPlan plan) {
 		encodeConstraints(plan);
-		return new CspPartialPlan(csp, plan.getProblem(), plan.getPlanSteps(), plan.getOriginalSub(), plan.getOriginalSub());
+		return new CspPartialPlan(csp, plan.getProblem(), plan.getPlanSteps(), plan.getOriginalSub(), plan.getOriginalSub(), new TreewidthCalculator(twCalc));
 	}
 
 	@Override
@@ -195,6 +203,71 @@ public class PcToCspEncoder extends ConstraintEncoder<ExpressionCsp, CspEncoderO
 		return csp;
 	}
 
+	/**
+	 * Returns true if updateConstraints patches the last CSP in place, rather
+	 * than encoding it from scratch. Optimised CSPs and switching variables
+	 * depend on the whole causal structure, so cannot be patched.
+	 */
+	public boolean isIncremental() {
+		return !options.optimise && !options.switchingVars;
+	}
+
+	public CspPartialPlan updateAsPartialPlan(PcLink pcLink) {
+		updateConstraints(pcLink);
+		return new CspPartialPlan(csp, plan.getProblem(), plan.getPlanSteps(), plan.getOriginalSub(), plan.getOriginalSub(), new TreewidthCalculator(twCalc));
+	}
+
+	/**
+	 * As updateAsPartialPlan, but the update is made to a copy of the CSP, so
+	 * the CSP of the last encoded plan is unchanged. Used to test links before
+	 * deciding which to add.
+	 */
+	public CspPartialPlan speculateAsPartialPlan(PcLink pcLink) {
+		if (!isIncremental())
+			return encodeAsPartialPlan(plan);
+
+		ExpressionCsp current = csp;
+		Map<Consumer, Expression<Variable>> currentConstraints = consumerConstraints;
+		csp = new ExpressionCsp(current);
+		consumerConstraints = new HashMap<Consumer, Expression<Variable>>(currentConstraints);
+		try {
+			return updateAsPartialPlan(pcLink);
+		} finally {
+			csp = current;
+			consumerConstraints = currentConstraints;
+		}
+	}
+
+	/**
+	 * Updates the CSP of the last encoded plan after pcLink has been added to
+	 * or removed from its causal structure. Only the constraint on the link's
+	 * consumer is rebuilt; the variables, domains, threats and all-different
+	 * constraint are unchanged. If not incremental, the plan is re-encoded.
+	 */
+	public ExpressionCsp updateConstraints(PcLink pcLink) {
+		if (plan == null)
+			throw new IllegalStateException("No plan has been encoded");
+
+		if (!isIncremental())
+			return encodeConstraints(plan);
+
+		long startTime = System.currentTimeMillis();
+
+		Consumer consumer = pcLink.getConsumer();
+		Expression<Variable> prev = consumerConstraints.remove(consumer);
+		if (prev != null)
+			csp.removeConstraint(prev);
+
+		Map<PcLink, Expression<Variable>> pcOptions = getProducerConsumerOptions(consumer);
+		if (!pcOptions.isEmpty())
+			addConsumerConstraint(consumer, pcOptions);
+		else if (!consumer.literal.getAtom().getParameters().isEmpty())
+			throw new RuntimeException("No constraints for consumer " + consumer);
+
+		time = System.currentTimeMillis() - startTime;
+		return csp;
+	}
+
 	@Override
 	public String getName() {
 		return getClass().getSimpleName();
@@ -281,9 +354,9 @@ public class PcToCspEncoder extends ConstraintEncoder<ExpressionCsp, CspEncoderO
 
 	protected void setProducerConsumerConstraints() {
 
-		CausalStructure constraints = plan.getConstraints();
-
-		ThreatMap threatMap = ThreatMap.getThreatMap(plan.getPlanSteps());
+		threatMap = ThreatMap.getThreatMap(plan.getPlanSteps());
+		pcLinkConstraints = new HashMap<PcLink, Expression<Variable>>();
+		consumerConstraints = new HashMap<Consumer, Expression<Variable>>();
 
 		// for each precon of each operator
 		for (Operator<Variable> consOp : plan.getPlanSteps()) {
@@ -293,229 +366,253 @@ public class PcToCspEncoder extends ConstraintEncoder<ExpressionCsp, CspEncoderO
 
 				Consumer consumer = new Consumer(consOp, consLit).intern();
 
-				if (constraints.getProducers(consumer).isEmpty())
-					throw new RuntimeException("No producer for consumer: " + consumer);
-
-				Variable consOrdinal = opVarMap.get(consumer.operator);
-
 				// add producer-consumer constraints
-				Map<PcLink, Expression<Variable>> pcOptions = new HashMap<PcLink, Expression<Variable>>();
-
-				for (Producer producer : constraints.getProducers(consumer)) {
-
-					PcLink pcLink = new PcLink(producer, consumer).intern();
-
-					//System.out.println(pcLink);
-
-					Variable prodOrdinal = opVarMap.get(producer.operator);
-					List<Expression<Variable>> conj = new ArrayList<Expression<Variable>>();
-
-					// co-designation constraint
-					for (int v = 0; v < consumer.literal.getAtom().getParameters().size(); v++)
-						conj.add(Expression.buildLiteral(Literal.equals(
-								producer.literal.getAtom().getVariables().get(v),
-								consumer.literal.getAtom().getVariables().get(v), true)));
-
-					// ordering constraint
-					conj.add(Expression.buildLiteral(Literal.prec(prodOrdinal, consOrdinal)));
-
-					// now each threat
-				
-					for (Threat threat : threatMap.getNonGroundThreats(pcLink)) {
-						Variable threatOrd = opVarMap.get(threat.operator);
-
-						switch (options.threatRestriction) {
-
-						case BINDING:			
-							// threat was undone by a later postcondition of the same action, 
-							// ensure bindings remain the same
-							Literal<Variable> undo = threat.operator.getUndoing(threat.literal.getNegated());
-							if (undo != null && 
-									plan.getOriginalSub().apply(threat.literal.getAtom().getVariables()).equals(
-									plan.getOriginalSub().apply(undo.getAtom().getVariables()))) {
-
-								List<Expression<Variable>> undoConj = new ArrayList<Expression<Variable>>();
-								for (int k = 0; k < threat.literal.getAtom().getVariables().size(); k++) {
-									undoConj.add(Expression.buildLiteral(Literal.equals(
-											threat.literal.getAtom().getVariables().get(k),
-											undo.getAtom().getVariables().get(k), true)));
-								}
-								conj.add(Expression.buildExpression(Connective.AND, undoConj));				
-								break;
-							}
-
-							// bindings were different, must remain different
-							boolean codesig = true;
-							for (int v = 0; v < consumer.literal.getAtom().getVariables().size(); v++) {
-								Constant cval = plan.getOriginalSub().apply(consumer.literal.getAtom().getVariables().get(v));
-								Constant tval = plan.getOriginalSub().apply(threat.literal.getAtom().getVariables().get(v));
+				Map<PcLink, Expression<Variable>> pcOptions = getProducerConsumerOptions(consumer);
 
-								if (!cval.equals(tval)) { // values must remain different
-									conj.add(Expression.buildLiteral(
-											Literal.equals(consumer.literal.getAtom().getVariables().get(v),
-													threat.literal.getAtom().getVariables().get(v), false)));
-									codesig = false;
-									break;
-								}
-								
-							}
+				if (!pcOptions.isEmpty()) {
+					if (options.switchingVars) {
+						List<Expression<Variable>> switchExps = new ArrayList<Expression<Variable>>();
+						for (PcLink link : pcOptions.keySet()) {
+							Variable switchVar = pcLinkVarMap.get(link);
+							Expression<Variable> switchExp = Expression.buildLiteral(Literal.equals(switchVar, TRUE_VAR, true));
+							switchExps.add(switchExp);
 
-							if (!codesig)
-								break;
+							csp.addConstraint(Expression.buildImplication(switchExp, pcOptions.get(link)));
+							csp.addConstraint(Expression.buildImplication(pcOptions.get(link), switchExp));
 
-							// t < p in original plan, keep this
-							if (plan.getPlanSteps().indexOf(threat.operator) < plan.getPlanSteps().indexOf(producer.operator)) {
-								conj.add(Expression.buildLiteral(Literal.prec(threatOrd, prodOrdinal)));
-								break;
-							}
-							
-							// c < t in original plan, keep this
-							if (plan.getPlanSteps().indexOf(threat.operator) > plan.getPlanSteps().indexOf(consumer.operator)) {
-								conj.add(Expression.buildLiteral(Literal.prec(consOrdinal, threatOrd)));
-								break;
-							}
-							
-							// must be p < t < c in original plan, all codesignated. so p is not the original producer for c.
-							// require that t < p or c < t
-							List<Expression<Variable>> precDisj = new ArrayList<Expression<Variable>>();
-							precDisj.add(Expression.buildLiteral(Literal.prec(threatOrd, prodOrdinal)));
-							precDisj.add(Expression.buildLiteral(Literal.prec(consOrdinal, threatOrd)));	
-							conj.add(Expression.buildExpression(Connective.OR, precDisj));
-						
-							break;	
-							
-						case ORDERING:
-							// threat was undone by a later postcondition of the same action, 
-							// ensure bindings remain the same
-							Literal<Variable> undoing = threat.operator.getUndoing(threat.literal.getNegated());
-							if (undoing != null && 
-									plan.getOriginalSub().apply(threat.literal.getAtom().getVariables()).equals(
-									plan.getOriginalSub().apply(undoing.getAtom().getVariables()))) {
-
-								List<Expression<Variable>> undoConj = new ArrayList<Expression<Variable>>();
-								for (int k = 0; k < threat.literal.getAtom().getVariables().size(); k++) {
-									undoConj.add(Expression.buildLiteral(Literal.equals(
-											threat.literal.getAtom().getVariables().get(k),
-											undoing.getAtom().getVariables().get(k), true)));
-								}
-								conj.add(Expression.buildExpression(Connective.AND, undoConj));
-							
-								break;
-							}
-							
-							// t < p in original plan, keep this
-							if (plan.getPlanSteps().indexOf(threat.operator) < plan.getPlanSteps().indexOf(producer.operator)) {
-								conj.add(Expression.buildLiteral(Literal.prec(threatOrd, prodOrdinal)));
-								break;
-							}
-							// c < t in original plan, keep this
-							if (plan.getPlanSteps().indexOf(threat.operator) > plan.getPlanSteps().indexOf(consumer.operator)) {
-								conj.add(Expression.buildLiteral(Literal.prec(consOrdinal, threatOrd)));
-								break;
-							}
+						}
+						csp.addConstraint(Expression.buildExpression(Connective.OR, switchExps));
 
-							// bindings were different, must remain different
-							boolean codesign = true;
-							for (int v = 0; v < consumer.literal.getAtom().getVariables().size(); v++) {
-								Constant cval = plan.getOriginalSub().apply(consumer.literal.getAtom().getVariables().get(v));
-								Constant tval = plan.getOriginalSub().apply(threat.literal.getAtom().getVariables().get(v));
+					} else
+						addConsumerConstraint(consumer, pcOptions);
+				} else if (!consumer.literal.getAtom().getParameters().isEmpty())
+					throw new RuntimeException("No constraints for consumer " + consumer);
+			}
+		}
+	}
 
-								if (!cval.equals(tval)) { // values must remain different
-									conj.add(Expression.buildLiteral(
-											Literal.equals(consumer.literal.getAtom().getVariables().get(v),
-													threat.literal.getAtom().getVariables().get(v), false)));
-									codesign = false;
-									break;
-								}
-								
-							}
+	// the constraints of each producer of the consumer
+	protected Map<PcLink, Expression<Variable>> getProducerConsumerOptions(Consumer consumer) {
+		Set<Producer> producers = plan.getConstraints().getProducers(consumer);
+		if (producers.isEmpty())
+			throw new RuntimeException("No producer for consumer: " + consumer);
+
+		Map<PcLink, Expression<Variable>> pcOptions = new HashMap<PcLink, Expression<Variable>>();
+		for (Producer producer : producers) {
+			PcLink pcLink = new PcLink(producer, consumer).intern();
+			Expression<Variable> exp = pcLinkConstraints.get(pcLink);
+			if (exp == null && !pcLinkConstraints.containsKey(pcLink)) {
+				exp = buildProducerConsumerConstraint(pcLink);
+				pcLinkConstraints.put(pcLink, exp);
+			}
+			if (exp != null)
+				pcOptions.put(pcLink, exp);
+		}
+		return pcOptions;
+	}
 
-							if (!codesign)
-								break;
+	// one of the producers must be used
+	protected void addConsumerConstraint(Consumer consumer, Map<PcLink, Expression<Variable>> pcOptions) {
+		List<Expression<Variable>> poss = new ArrayList<Expression<Variable>>();
+		for (PcLink link : pcOptions.keySet()) {
+			poss.add(pcOptions.get(link));
+		}
+		Expression<Variable> exp = Expression.buildExpression(Connective.OR, poss);
+		csp.addConstraint(exp);
+		consumerConstraints.put(consumer, exp);
+	}
 
-							// must be p < t < c in original plan, all codesignated. so p is not the original producer for c.
-							// require that t < p or c < t
-							List<Expression<Variable>> precOPts = new ArrayList<Expression<Variable>>();
-							precOPts.add(Expression.buildLiteral(Literal.prec(threatOrd, prodOrdinal)));
-							precOPts.add(Expression.buildLiteral(Literal.prec(consOrdinal, threatOrd)));	
-							conj.add(Expression.buildExpression(Connective.OR, precOPts));
-						
-							break;
-
-					case NONE:							
-						// c != t or ...
-						List<Expression<Variable>> disj = new ArrayList<Expression<Variable>>();
-						for (int v = 0; v < consumer.literal.getAtom().getParameters().size(); v++) {
-							// threat var is the same as producer var
-							if (producer.literal.getAtom().getVariables().get(v).equals(threat.literal.getAtom().getVariables().get(v)))
-								continue;
+	/**
+	 * Builds the co-designation, ordering and threat constraints of the link,
+	 * returning null if there are none, i.e., the consumer is a proposition.
+	 */
+	protected Expression<Variable> buildProducerConsumerConstraint(PcLink pcLink) {
+		Producer producer = pcLink.getProducer();
+		Consumer consumer = pcLink.getConsumer();
+
+		Variable consOrdinal = opVarMap.get(consumer.operator);
+		Variable prodOrdinal = opVarMap.get(producer.operator);
+		List<Expression<Variable>> conj = new ArrayList<Expression<Variable>>();
+
+		// co-designation constraint
+		for (int v = 0; v < consumer.literal.getAtom().getParameters().size(); v++)
+			conj.add(Expression.buildLiteral(Literal.equals(
+					producer.literal.getAtom().getVariables().get(v),
+					consumer.literal.getAtom().getVariables().get(v), true)));
+
+		// ordering constraint
+		conj.add(Expression.buildLiteral(Literal.prec(prodOrdinal, consOrdinal)));
+
+		// now each threat
+		
+		for (Threat threat : threatMap.getNonGroundThreats(pcLink)) {
+			Variable threatOrd = opVarMap.get(threat.operator);
+
+			switch (options.threatRestriction) {
+
+			case BINDING:			
+				// threat was undone by a later postcondition of the same action, 
+				// ensure bindings remain the same
+				Literal<Variable> undo = threat.operator.getUndoing(threat.literal.getNegated());
+				if (undo != null && 
+						plan.getOriginalSub().apply(threat.literal.getAtom().getVariables()).equals(
+						plan.getOriginalSub().apply(undo.getAtom().getVariables()))) {
+
+					List<Expression<Variable>> undoConj = new ArrayList<Expression<Variable>>();
+					for (int k = 0; k < threat.literal.getAtom().getVariables().size(); k++) {
+						undoConj.add(Expression.buildLiteral(Literal.equals(
+								threat.literal.getAtom().getVariables().get(k),
+								undo.getAtom().getVariables().get(k), true)));
+					}
+					conj.add(Expression.buildExpression(Connective.AND, undoConj));				
+					break;
+				}
 
-							disj.add(Expression.buildLiteral(Literal.equals(
-									threat.literal.getAtom().getVariables().get(v),
-									producer.literal.getAtom().getVariables().get(v), false)));
-						}
+				// bindings were different, must remain different
+				boolean codesig = true;
+				for (int v = 0; v < consumer.literal.getAtom().getVariables().size(); v++) {
+					Constant cval = plan.getOriginalSub().apply(consumer.literal.getAtom().getVariables().get(v));
+					Constant tval = plan.getOriginalSub().apply(threat.literal.getAtom().getVariables().get(v));
+
+					if (!cval.equals(tval)) { // values must remain different
+						conj.add(Expression.buildLiteral(
+								Literal.equals(consumer.literal.getAtom().getVariables().get(v),
+										threat.literal.getAtom().getVariables().get(v), false)));
+						codesig = false;
+						break;
+					}
+					
+				}
 
-						// or cons <= t or t < prod	
-						if (!threat.operator.equals(producer.operator))				
-							disj.add(Expression.buildLiteral(Literal.prec(threatOrd, prodOrdinal)));
-						disj.add(Expression.buildLiteral(Literal.prec(consOrdinal, threatOrd)));
-
-						// threat can undone by a later postcondition of the same action, if they have the same bindings
-						Literal<Variable> und = threat.operator.getUndoing(threat.literal.getNegated());
-						if (und != null) {				
-							List<Expression<Variable>> undoConj = new ArrayList<Expression<Variable>>();
-							for (int k = 0; k < threat.literal.getAtom().getVariables().size(); k++) {
-								undoConj.add(Expression.buildLiteral(Literal.equals(
-										threat.literal.getAtom().getVariables().get(k),
-										und.getAtom().getParameters().get(k), true)));
-							}
-							disj.add(Expression.buildExpression(Connective.AND, undoConj));
-						}
+				if (!codesig)
+					break;
 
-						// finalise
-						conj.add(Expression.buildExpression(Connective.OR, disj));
+				// t < p in original plan, keep this
+				if (plan.getPlanSteps().indexOf(threat.operator) < plan.getPlanSteps().indexOf(producer.operator)) {
+					conj.add(Expression.buildLiteral(Literal.prec(threatOrd, prodOrdinal)));
+					break;
+				}
+				
+				// c < t in original plan, keep this
+				if (plan.getPlanSteps().indexOf(threat.operator) > plan.getPlanSteps().indexOf(consumer.operator)) {
+					conj.add(Expression.buildLiteral(Literal.prec(consOrdinal, threatOrd)));
+					break;
+				}
+				
+				// must be p < t < c in original plan, all codesignated. so p is not the original producer for c.
+				// require that t < p or c < t
+				List<Expression<Variable>> precDisj = new ArrayList<Expression<Variable>>();
+				precDisj.add(Expression.buildLiteral(Literal.prec(threatOrd, prodOrdinal)));
+				precDisj.add(Expression.buildLiteral(Literal.prec(consOrdinal, threatOrd)));	
+				conj.add(Expression.buildExpression(Connective.OR, precDisj));
+			
+				break;	
+				
+			case ORDERING:
+				// threat was undone by a later postcondition of the same action, 
+				// ensure bindings remain the same
+				Literal<Variable> undoing = threat.operator.getUndoing(threat.literal.getNegated());
+				if (undoing != null && 
+						plan.getOriginalSub().apply(threat.literal.getAtom().getVariables()).equals(
+						plan.getOriginalSub().apply(undoing.getAtom().getVariables()))) {
+
+					List<Expression<Variable>> undoConj = new ArrayList<Expression<Variable>>();
+					for (int k = 0; k < threat.literal.getAtom().getVariables().size(); k++) {
+						undoConj.add(Expression.buildLiteral(Literal.equals(
+								threat.literal.getAtom().getVariables().get(k),
+								undoing.getAtom().getVariables().get(k), true)));
+					}
+					conj.add(Expression.buildExpression(Connective.AND, undoConj));
+				
+					break;
+				}
+				
+				// t < p in original plan, keep this
+				if (plan.getPlanSteps().indexOf(threat.operator) < plan.getPlanSteps().indexOf(producer.operator)) {
+					conj.add(Expression.buildLiteral(Literal.prec(threatOrd, prodOrdinal)));
+					break;
+				}
+				// c < t in original plan, keep this
+				if (plan.getPlanSteps().indexOf(threat.operator) > plan.getPlanSteps().indexOf(consumer.operator)) {
+					conj.add(Expression.buildLiteral(Literal.prec(consOrdinal, threatOrd)));
+					break;
+				}
 
+				// bindings were different, must remain different
+				boolean codesign = true;
+				for (int v = 0; v < consumer.literal.getAtom().getVariables().size(); v++) {
+					Constant cval = plan.getOriginalSub().apply(consumer.literal.getAtom().getVariables().get(v));
+					Constant tval = plan.getOriginalSub().apply(threat.literal.getAtom().getVariables().get(v));
+
+					if (!cval.equals(tval)) { // values must remain different
+						conj.add(Expression.buildLiteral(
+								Literal.equals(consumer.literal.getAtom().getVariables().get(v),
+										threat.literal.getAtom().getVariables().get(v), false)));
+						codesign = false;
 						break;
-					default:
-						throw new IllegalArgumentException("Unknown encoder option: " + options.threatRestriction);
 					}
-
+					
 				}
 
-				if (!conj.isEmpty()) // this can happen when predicate has no parameters, i.e. is a proposition
-					pcOptions.put(pcLink, Expression.buildExpression(Connective.AND, conj));
-				else if (!consumer.literal.getAtom().getParameters().isEmpty()) // not a proposition
-					throw new RuntimeException("No constraints for consumer " + consumer);
+				if (!codesign)
+					break;
+
+				// must be p < t < c in original plan, all codesignated. so p is not the original producer for c.
+				// require that t < p or c < t
+				List<Expression<Variable>> precOPts = new ArrayList<Expression<Variable>>();
+				precOPts.add(Expression.buildLiteral(Literal.prec(threatOrd, prodOrdinal)));
+				precOPts.add(Expression.buildLiteral(Literal.prec(consOrdinal, threatOrd)));	
+				conj.add(Expression.buildExpression(Connective.OR, precOPts));
+			
+				break;
+
+			case NONE:							
+				// c != t or ...
+				List<Expression<Variable>> disj = new ArrayList<Expression<Variable>>();
+				for (int v = 0; v < consumer.literal.getAtom().getParameters().size(); v++) {
+					// threat var is the same as producer var
+					if (producer.literal.getAtom().getVariables().get(v).equals(threat.literal.getAtom().getVariables().get(v)))
+						continue;
+
+					disj.add(Expression.buildLiteral(Literal.equals(
+							threat.literal.getAtom().getVariables().get(v),
+							producer.literal.getAtom().getVariables().get(v), false)));
+				}
 
-			}
+				// or cons <= t or t < prod	
+				if (!threat.operator.equals(producer.operator))				
+					disj.add(Expression.buildLiteral(Literal.prec(threatOrd, prodOrdinal)));
+				disj.add(Expression.buildLiteral(Literal.prec(consOrdinal, threatOrd)));
+
+				// threat can undone by a later postcondition of the same action, if they have the same bindings
+				Literal<Variable> und = threat.operator.getUndoing(threat.literal.getNegated());
+				if (und != null) {				
+					List<Expression<Variable>> undoConj = new ArrayList<Expression<Variable>>();
+					for (int k = 0; k < threat.literal.getAtom().getVariables().size(); k++) {
+						undoConj.add(Expression.buildLiteral(Literal.equals(
+								threat.literal.getAtom().getVariables().get(k),
+								und.getAtom().getParameters().get(k), true)));
+					}
+					disj.add(Expression.buildExpression(Connective.AND, undoConj));
+				}
 
-			if (!pcOptions.isEmpty()) {
-				if (options.switchingVars) {
-					List<Expression<Variable>> switchExps = new ArrayList<Expression<Variable>>();
-					for (PcLink link : pcOptions.keySet()) {
-						Variable switchVar = pcLinkVarMap.get(link);
-						Expression<Variable> switchExp = Expression.buildLiteral(Literal.equals(switchVar, TRUE_VAR, true));
-						switchExps.add(switchExp);
+				// finalise
+				conj.add(Expression.buildExpression(Connective.OR, disj));
 
-						csp.addConstraint(Expression.buildImplication(switchExp, pcOptions.get(link)));
-						csp.addConstraint(Expression.buildImplication(pcOptions.get(link), switchExp));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown encoder option: " + options.threatRestriction);
+			}
 
-					}
-					csp.addConstraint(Expression.buildExpression(Connective.OR, switchExps));
+		}
 
-				} else {
-					List<Expression<Variable>> poss = new ArrayList<Expression<Variable>>();
-					for (PcLink link : pcOptions.keySet()) {
-						poss.add(pcOptions.get(link));
-					}
-					csp.addConstraint(Expression.buildExpression(Connective.OR, poss));
-				}						
-			} else if (!consumer.literal.getAtom().getParameters().isEmpty())
-				throw new RuntimeException("No constraints for consumer " + consumer);
+		if (!conj.isEmpty()) // this can happen when predicate has no parameters, i.e. is a proposition
+			return Expression.buildExpression(Connective.AND, conj);
+		else if (!consumer.literal.getAtom().getParameters().isEmpty()) // not a proposition
+			throw new RuntimeException("No constraints for consumer " + consumer);
 
-		}
+		return null;
 	}
-}
 
 
 /*
@@ -0,0 +1,138 @@
+package au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat;
+
+import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AtMostOneOpt;
+
+/**
+ * At-most-one constraints over a set of literals. Apart from PAIRWISE, the
+ * encodings use auxiliary propositions, which must be allocated by the
+ * caller (see getNumAuxProps) so that tasks building clauses in parallel do
+ * not add propositions.
+ *
+ * SEQUENTIAL is the sequential counter of Sinz (2005), COMMANDER is the
+ * commander encoding of Klieber and Kwon (2007), and PRODUCT is the product
+ * encoding of Chen (2010). All three have O(n) clauses.
+ */
+public class AtMostOne {
+
+	private static final int PAIRWISE_MAX = 4; // smaller sets are encoded pairwise
+	private static final int COMMANDER_GROUP = 3;
+
+	public static int getNumAuxProps(AtMostOneOpt opt, int n) {
+		int[] lits = new int[n];
+		return encode(opt, lits, null, 0, null);
+	}
+
+	/**
+	 * Adds clauses such that at most one of lits is true, using the first
+	 * getNumAuxProps(opt, lits.length) props in aux.
+	 */
+	public static void encode(AtMostOneOpt opt, int[] lits, int[] aux, ClauseBuffer clauses) {
+		encode(opt, lits, aux, 0, clauses);
+	}
+
+	// returns the index of the next unused aux prop. If clauses is null, only counts.
+	private static int encode(AtMostOneOpt opt, int[] lits, int[] aux, int next, ClauseBuffer clauses) {
+		switch (opt) {
+		case PAIRWISE:
+			pairwise(lits, clauses);
+			return next;
+		case SEQUENTIAL:
+			return sequential(lits, aux, next, clauses);
+		case COMMANDER:
+			return commander(lits, aux, next, clauses);
+		case PRODUCT:
+			return product(lits, aux, next, clauses);
+		default:
+			throw new IllegalArgumentException("Unknown at-most-one encoding: " + opt);
+		}
+	}
+
+	private static void pairwise(int[] lits, ClauseBuffer clauses) {
+		if (clauses == null)
+			return;
+		for (int i = 0; i < lits.length; i++) {
+			for (int j = i+1; j < lits.length; j++)
+				clauses.addClause(-lits[i], -lits[j]);
+		}
+	}
+
+	private static int sequential(int[] lits, int[] aux, int next, ClauseBuffer clauses) {
+		int n = lits.length;
+		if (n <= 1)
+			return next;
+		if (clauses == null)
+			return next + n - 1;
+
+		// s_i is true if one of x_1 .. x_i is true
+		clauses.addClause(-lits[0], aux[next]);
+		for (int i = 1; i < n - 1; i++) {
+			clauses.addClause(-lits[i], aux[next + i]);
+			clauses.addClause(-aux[next + i - 1], aux[next + i]);
+			clauses.addClause(-lits[i], -aux[next + i - 1]);
+		}
+		clauses.addClause(-lits[n-1], -aux[next + n - 2]);
+		return next + n - 1;
+	}
+
+	private static int commander(int[] lits, int[] aux, int next, ClauseBuffer clauses) {
+		int n = lits.length;
+		if (n <= PAIRWISE_MAX) {
+			pairwise(lits, clauses);
+			return next;
+		}
+
+		int nGroups = (n + COMMANDER_GROUP - 1) / COMMANDER_GROUP;
+		int[] commanders = new int[nGroups];
+		for (int g = 0; g < nGroups; g++) {
+			int from = g * COMMANDER_GROUP;
+			int to = Math.min(n, from + COMMANDER_GROUP);
+			if (clauses != null) {
+				int c = aux[next + g];
+				commanders[g] = c;
+
+				int[] group = new int[to - from];
+				System.arraycopy(lits, from, group, 0, group.length);
+				pairwise(group, clauses);
+
+				// c is true iff one of the group is true
+				int[] some = new int[group.length + 1];
+				some[0] = -c;
+				for (int i = 0; i < group.length; i++) {
+					clauses.addClause(-group[i], c);
+					some[i+1] = group[i];
+				}
+				clauses.addClause(some);
+			}
+		}
+
+		return commander(commanders, aux, next + nGroups, clauses);
+	}
+
+	private static int product(int[] lits, int[] aux, int next, ClauseBuffer clauses) {
+		int n = lits.length;
+		if (n <= PAIRWISE_MAX) {
+			pairwise(lits, clauses);
+			return next;
+		}
+
+		// x_i is at row i / nCols, column i % nCols of a grid
+		int nCols = (int) Math.ceil(Math.sqrt(n));
+		int nRows = (n + nCols - 1) / nCols;
+		int[] rows = new int[nRows];
+		int[] cols = new int[nCols];
+		if (clauses != null) {
+			for (int r = 0; r < nRows; r++)
+				rows[r] = aux[next + r];
+			for (int c = 0; c < nCols; c++)
+				cols[c] = aux[next + nRows + c];
+			for (int i = 0; i < n; i++) {
+				clauses.addClause(-lits[i], rows[i / nCols]);
+				clauses.addClause(-lits[i], cols[i % nCols]);
+			}
+		}
+
+		next = product(rows, aux, next + nRows + nCols, clauses);
+		return product(cols, aux, next, clauses);
+	}
+
+}
@@ -1,6 +1,8 @@
 package au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -10,6 +12,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import au.rmit.agtgrp.pplib.auto.Permutation;
 import au.rmit.agtgrp.pplib.fol.function.Constant;
@@ -30,10 +37,12 @@ import au.rmit.agtgrp.pplib.pp.partialplan.clplan.PcPlan;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.ConstraintEncoder;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.csp.CspEncoderOptions.ThreatRestriction;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AcyclicityOpt;
+import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.AsymmetryOpt;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.EqualityOpt;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat.CnfEncoderOptions.OutputOpt;
 import au.rmit.agtgrp.pplib.pp.partialplan.clplan.symm.ClPlanAutomorphisms;
 import au.rmit.agtgrp.pplib.sat.SatFormula;
+import au.rmit.agtgrp.pplib.utils.collections.Pair;
 
 public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOptions> {
 
@@ -61,9 +70,18 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 	protected Map<String, List<Operator<Variable>>> operatorsByType;
 	protected Map<Constant, Variable> constantVars;
 
+	// the formula before symmetry breaking, see encodeSharedConstraints
+	protected SatFormula sharedFormula;
+	protected PropositionMap sharedPropMap;
+
 	protected int nSymmetryClauses;
 	protected int nSymmetryProps;
 
+	// lex-leader chains encoded so far
+	protected LexNode lexRoot;
+	protected int nLexAux;
+	protected int nSharedLexPositions;
+
 	public ClToSatEncoder(CnfEncoderOptions options) {
 		super(options);
 	}
@@ -78,6 +96,69 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 	public SatFormula encodeConstraints(PcPlan plan) {
 		long startTime = System.currentTimeMillis();
 
+		init(plan);
+		encode();
+
+		if (options.verbose)
+			System.out.println("CNF size: " + satFormula.getNumProps() + " props, " + satFormula.getNumClauses() + " clauses");
+
+		this.time = System.currentTimeMillis() - startTime;
+
+		return satFormula;
+	}
+
+	/**
+	 * Builds all constraints except the symmetry breaking constraints, which
+	 * are the only ones that depend on the asymmetry option. Formulas for
+	 * several asymmetry options can then be built from these with
+	 * encodeSymmetryBreaking, without encoding the plan again.
+	 */
+	public SatFormula encodeSharedConstraints(PcPlan plan) {
+		long startTime = System.currentTimeMillis();
+
+		init(plan);
+		encodeShared();
+		sharedFormula = satFormula;
+		sharedPropMap = propMap;
+
+		if (options.verbose)
+			System.out.println("Shared CNF size: " + satFormula.getNumProps() + " props, " + satFormula.getNumClauses() + " clauses");
+
+		this.time = System.currentTimeMillis() - startTime;
+
+		return satFormula;
+	}
+
+	/**
+	 * Adds the symmetry breaking constraints for asymm to the formula built by
+	 * encodeSharedConstraints. If keepShared is true, they are added to a copy
+	 * of the formula and proposition map, so further formulas can be built
+	 * from them. Otherwise they are added to the shared formula itself, which
+	 * cannot be used again.
+	 */
+	public SatFormula encodeSymmetryBreaking(AsymmetryOpt asymm, boolean keepShared) {
+		if (sharedFormula == null)
+			throw new IllegalStateException("Shared constraints have not been encoded");
+
+		long startTime = System.currentTimeMillis();
+
+		if (keepShared) {
+			satFormula = copySatFormula(sharedFormula);
+			propMap = new PropositionMap(sharedPropMap);
+		} else {
+			satFormula = sharedFormula;
+			propMap = sharedPropMap;
+			sharedFormula = null;
+			sharedPropMap = null;
+		}
+		buildSymmetryBreakingConstraints(asymm);
+
+		this.time = System.currentTimeMillis() - startTime;
+
+		return satFormula;
+	}
+
+	protected void init(PcPlan plan) {
 		if (options.verbose)
 			System.out.println("Initialising encoder");
 		this.plan = plan;
@@ -86,6 +167,8 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 		propMap = new PropositionMap(opEncodingBits);
 
 		satFormula = initSatFormula();
+		sharedFormula = null;
+		sharedPropMap = null;
 
 		constantsByType = getConstantsByType();
 		variablesByType = getVariablesByType();
@@ -100,18 +183,14 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 		if (options.verbose)
 			System.out.println("Building threats");
 		threatMap = ThreatMap.getThreatMap(plan.getPlanSteps());
-
-		encode();
-
-		if (options.verbose)
-			System.out.println("CNF size: " + satFormula.getNumProps() + " props, " + satFormula.getNumClauses() + " clauses");
-
-		this.time = System.currentTimeMillis() - startTime;
-
-		return satFormula;
 	}
 
 	protected void encode() {
+		encodeShared();
+		buildSymmetryBreakingConstraints(options.asymmOpt);
+	}
+
+	protected void encodeShared() {
 
 		if (options.verbose)
 			System.out.println("Building causal link and threat constraints");
@@ -138,10 +217,6 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 			System.out.println("Closing precedence relation");
 		buildPrecClosureConstraints();
 
-		if (options.verbose)
-			System.out.println("Building symmetry breaking constraints");
-		buildSymmetryBreakingConstraints();
-
 		if (!causalStruct.isGround()) {
 			if (options.verbose)
 				System.out.println("Closing equality relation");	
@@ -153,6 +228,10 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 		return new SatFormula();
 	}
 
+	protected SatFormula copySatFormula(SatFormula formula) {
+		return new SatFormula(formula);
+	}
+
 
 	@Override
 	public String getName() {
@@ -266,7 +345,7 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 	protected int buildPrecProp(Operator<Variable> op1, Operator<Variable> op2) {
 		Integer prop = propMap.getPrecedenceProposition(op1, op2);
 		if (prop == null) {
-			if (options.acyclOpt == AcyclicityOpt.ATOM)
+			if (options.acyclOpt == AcyclicityOpt.ATOM || options.acyclOpt == AcyclicityOpt.SPARSE)
 				propMap.addPrecedenceProposition(op1, op2);	
 			else if (options.acyclOpt == AcyclicityOpt.BINARY) {
 				for (int k = 1; k <= opEncodingBits; k++)			
@@ -286,6 +365,94 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 		}		
 	}
 
+	/**
+	 * Precedence propositions indexed by plan step, 0 if there is none.
+	 */
+	protected int[][] getPrecedencePropositionMatrix(List<Operator<Variable>> steps) {
+		int[][] prec = new int[steps.size()][steps.size()];
+		for (int i = 0; i < steps.size(); i++) {
+			for (int j = 0; j < steps.size(); j++) {
+				if (steps.get(i).equals(steps.get(j)))
+					continue;
+				Integer p = propMap.getPrecedenceProposition(steps.get(i), steps.get(j));
+				if (p != null)
+					prec[i][j] = p;
+			}
+		}
+		return prec;
+	}
+
+	/**
+	 * Equality propositions between vars i < j, 0 if there is none.
+	 */
+	protected int[][] getEqualityPropositionMatrix(List<Variable> vars) {
+		int[][] eq = new int[vars.size()][vars.size()];
+		for (int i = 0; i < vars.size(); i++) {
+			for (int j = i+1; j < vars.size(); j++) {
+				Integer p = propMap.getEqualityProposition(vars.get(i), vars.get(j));
+				if (p != null)
+					eq[i][j] = p;
+			}
+		}
+		return eq;
+	}
+
+
+	/*
+	 * PARALLEL CLAUSE BUILDING
+	 */
+
+	protected interface ClauseTask {
+		void build(int i, ClauseBuffer clauses);
+	}
+
+	/**
+	 * Runs tasks 0 .. n-1 on options.nThreads threads and adds their clauses
+	 * to the formula in task order, so the formula is identical to a
+	 * sequential run. Tasks may read, but must not add, propositions.
+	 */
+	protected void buildClauses(final int n, final ClauseTask task) {
+		if (options.nThreads <= 1 || n <= 1) {
+			ClauseBuffer clauses = new ClauseBuffer();
+			for (int i = 0; i < n; i++) {
+				task.build(i, clauses);
+				clauses.addTo(satFormula);
+			}
+			return;
+		}
+
+		ExecutorService ex = Executors.newFixedThreadPool(Math.min(options.nThreads, n));
+		try {
+			// only a few tasks ahead of the merge are buffered at a time
+			int window = options.nThreads * 4;
+			ArrayDeque<Future<ClauseBuffer>> pending = new ArrayDeque<Future<ClauseBuffer>>();
+			int next = 0;
+			for (int i = 0; i < n; i++) {
+				for (; next < n && next < i + window; next++) {
+					final int t = next;
+					pending.add(ex.submit(new Callable<ClauseBuffer>() {
+						@Override
+						public ClauseBuffer call() {
+							ClauseBuffer clauses = new ClauseBuffer();
+							task.build(t, clauses);
+							return clauses;
+						}
+					}));
+				}
+				pending.poll().get().addTo(satFormula);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			ex.shutdownNow();
+		}
+	}
+
 
 	protected CausalStructure filterCausalLinks() {
 		CausalStructure filtered = new CausalStructure(causalStruct.isGround());
@@ -666,6 +833,9 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 		else if (options.acyclOpt == AcyclicityOpt.BINARY) {
 			buildBinaryAcyclicity();
 		}
+		else if (options.acyclOpt == AcyclicityOpt.SPARSE) {
+			buildSparseAcyclicity();
+		}
 	}
 
 	protected void buildAtomAcyclicity() {
@@ -685,84 +855,187 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 			}
 		}
 
-		// close
-		for (Operator<Variable> op1 : plan.getPlanSteps()) {
-			for (Operator<Variable> op2 : plan.getPlanSteps()) {
-				if (op1.equals(op2) || propMap.getPrecedenceProposition(op2, op1) == null)
-					continue;
-				int p21 = propMap.getPrecedenceProposition(op2, op1);
+		// close, one task per op1
+		final int nSteps = plan.getPlanSteps().size();
+		final int[][] prec = getPrecedencePropositionMatrix(plan.getPlanSteps());
+		buildClauses(nSteps, new ClauseTask() {
+			@Override
+			public void build(int op1, ClauseBuffer clauses) {
+				for (int op2 = 0; op2 < nSteps; op2++) {
+					int p21 = prec[op2][op1];
+					if (p21 == 0)
+						continue;
+
+					// at least one must be false
+					int p12 = prec[op1][op2];
+					if (p12 != 0)
+						clauses.addClause(-p12, -p21);
+
+					for (int op3 = 0; op3 < nSteps; op3++) {
+						int p13 = prec[op1][op3];
+						int p23 = prec[op2][op3];
+						if (p13 == 0 || p23 == 0)
+							continue;
 
-				// at least one must be false
-				if (propMap.getPrecedenceProposition(op1, op2) != null) {	
-					int p12 = propMap.getPrecedenceProposition(op1, op2);
-					satFormula.addClause(-p12, -p21);
+						clauses.addClause(-p21, -p13, p23);
+					}
 				}
+			}
+		});
+	}
 
-				for (Operator<Variable> op3 : plan.getPlanSteps()) {
-					if (op3.equals(op2) || op3.equals(op1) || 
-							propMap.getPrecedenceProposition(op1, op3) == null || 
-							propMap.getPrecedenceProposition(op2, op3) == null)
-						continue;
+	/**
+	 * As ATOM, but precedence propositions are only added between steps that
+	 * can reach each other in the graph of the existing propositions, i.e.,
+	 * those from the causal links, threats and init/goal orderings. The graph
+	 * is fully closed, and transitivity clauses are only built for triples
+	 * along its edges, instead of checking all n^3 triples.
+	 */
+	protected void buildSparseAcyclicity() {
+
+		final List<Operator<Variable>> steps = plan.getPlanSteps();
+		final int nSteps = steps.size();
+		final int[][] prec = getPrecedencePropositionMatrix(steps);
+
+		// successors before closing
+		int[][] succs = new int[nSteps][];
+		for (int i = 0; i < nSteps; i++)
+			succs[i] = getSuccessors(prec, i);
+
+		// add props for all reachable pairs, in step order
+		int[] queue = new int[nSteps];
+		for (int i = 0; i < nSteps; i++) {
+			BitSet reached = new BitSet(nSteps);
+			reached.set(i); // so i is not queued again if it is on a cycle
+			int head = 0, tail = 0;
+			queue[tail++] = i;
+			while (head < tail) {
+				for (int j : succs[queue[head++]]) {
+					if (!reached.get(j)) {
+						reached.set(j);
+						queue[tail++] = j;
+					}
+				}
+			}
 
-					int p13 = propMap.getPrecedenceProposition(op1, op3);
-					int p23 = propMap.getPrecedenceProposition(op2, op3);
+			for (int j = reached.nextSetBit(0); j >= 0; j = reached.nextSetBit(j+1)) {
+				if (j != i && prec[i][j] == 0 && !steps.get(i).equals(steps.get(j)))
+					prec[i][j] = buildPrecProp(steps.get(i), steps.get(j));
+			}
+		}
 
-					satFormula.addClause(-p21, -p13, p23);
+		final int[][] closedSuccs = new int[nSteps][];
+		final int[][] closedPreds = new int[nSteps][];
+		for (int i = 0; i < nSteps; i++) {
+			closedSuccs[i] = getSuccessors(prec, i);
+			closedPreds[i] = getPredecessors(prec, i);
+		}
+
+		// close, one task per op1
+		buildClauses(nSteps, new ClauseTask() {
+			@Override
+			public void build(int op1, ClauseBuffer clauses) {
+				for (int op2 : closedPreds[op1]) {
+					int p21 = prec[op2][op1];
+
+					// at least one must be false
+					int p12 = prec[op1][op2];
+					if (p12 != 0 && op1 < op2)
+						clauses.addClause(-p12, -p21);
+
+					for (int op3 : closedSuccs[op1]) {
+						if (op3 == op2)
+							continue;
+						clauses.addClause(-p21, -prec[op1][op3], prec[op2][op3]);
+					}
 				}
 			}
+		});
+	}
+
+	private static int[] getSuccessors(int[][] prec, int i) {
+		int n = 0;
+		for (int j = 0; j < prec.length; j++) {
+			if (prec[i][j] != 0)
+				n++;
+		}
+		int[] succs = new int[n];
+		n = 0;
+		for (int j = 0; j < prec.length; j++) {
+			if (prec[i][j] != 0)
+				succs[n++] = j;
+		}
+		return succs;
+	}
+
+	private static int[] getPredecessors(int[][] prec, int i) {
+		int n = 0;
+		for (int j = 0; j < prec.length; j++) {
+			if (prec[j][i] != 0)
+				n++;
+		}
+		int[] preds = new int[n];
+		n = 0;
+		for (int j = 0; j < prec.length; j++) {
+			if (prec[j][i] != 0)
+				preds[n++] = j;
 		}
+		return preds;
 	}
 
 	protected void buildBinaryAcyclicity() {
-		// op1 < op2 and op2 < op3 then op1 < op3
-		for (int i = 0; i < plan.getPlanSteps().size(); i++) {
-			Operator<Variable> op1 = plan.getPlanSteps().get(i);
+		// op1 < op2 and op2 < op3 then op1 < op3, one task per op1
+		buildClauses(plan.getPlanSteps().size(), new ClauseTask() {
+			@Override
+			public void build(int i, ClauseBuffer clauses) {
+				Operator<Variable> op1 = plan.getPlanSteps().get(i);
 
-			for (int j = 0; j < plan.getPlanSteps().size(); j++) {
+				for (int j = 0; j < plan.getPlanSteps().size(); j++) {
 
-				Operator<Variable> op2 = plan.getPlanSteps().get(j);
-				if (i == j || propMap.getPrecedenceProposition(op1, op2) == null) // not comparable
-					continue;		
+					Operator<Variable> op2 = plan.getPlanSteps().get(j);
+					if (i == j || propMap.getPrecedenceProposition(op1, op2) == null) // not comparable
+						continue;		
 
-				// p12 <-> binary comparison
-				for (int k = 1; k <= opEncodingBits; k++) {
-					int p12k = propMap.getPrecedenceProposition(op1, op2, k);
-					if (k == 1) {
-						int op1k = propMap.getOperatorIdxEncodingProp(op1, k);
-						int op2k = propMap.getOperatorIdxEncodingProp(op2, k);
+					// p12 <-> binary comparison
+					for (int k = 1; k <= opEncodingBits; k++) {
+						int p12k = propMap.getPrecedenceProposition(op1, op2, k);
+						if (k == 1) {
+							int op1k = propMap.getOperatorIdxEncodingProp(op1, k);
+							int op2k = propMap.getOperatorIdxEncodingProp(op2, k);
 
-						// p12k -> binary op1 < binary op2
-						satFormula.addClause(-p12k, op2k);
-						satFormula.addClause(-p12k, -op1k);
+							// p12k -> binary op1 < binary op2
+							clauses.addClause(-p12k, op2k);
+							clauses.addClause(-p12k, -op1k);
 
-						// binary op1 < binary op2 -> p12k
-						satFormula.addClause(-op2k, op1k, p12k);
-					}
-					else {
-						int p12km1 = propMap.getPrecedenceProposition(op1, op2, k-1);
-						int op1k = propMap.getOperatorIdxEncodingProp(op1, k);
-						int op2k = propMap.getOperatorIdxEncodingProp(op2, k);
-
-						// p12k -> binary op1 < binary op2
-						satFormula.addClause(-p12k, op2k, -op1k);
-						satFormula.addClause(-p12k, op2k, p12km1);
-						satFormula.addClause(-p12k, -op1k, p12km1);
-
-						// binary op1 < binary op2 -> p12k
-						satFormula.addClause(-op2k, op1k, p12k);
-						satFormula.addClause(-op2k, -p12km1, p12k);
-						satFormula.addClause(op1k, -p12km1, p12k);
+							// binary op1 < binary op2 -> p12k
+							clauses.addClause(-op2k, op1k, p12k);
+						}
+						else {
+							int p12km1 = propMap.getPrecedenceProposition(op1, op2, k-1);
+							int op1k = propMap.getOperatorIdxEncodingProp(op1, k);
+							int op2k = propMap.getOperatorIdxEncodingProp(op2, k);
+
+							// p12k -> binary op1 < binary op2
+							clauses.addClause(-p12k, op2k, -op1k);
+							clauses.addClause(-p12k, op2k, p12km1);
+							clauses.addClause(-p12k, -op1k, p12km1);
+
+							// binary op1 < binary op2 -> p12k
+							clauses.addClause(-op2k, op1k, p12k);
+							clauses.addClause(-op2k, -p12km1, p12k);
+							clauses.addClause(op1k, -p12km1, p12k);
+						}
 					}
-				}
 
-				if (j > i && propMap.getPrecedenceProposition(op2, op1) != null) {
-					// at least one must be false
-					int p12 = propMap.getPrecedenceProposition(op1, op2);
-					int p21 = propMap.getPrecedenceProposition(op2, op1);
-					satFormula.addClause(-p12, -p21);
+					if (j > i && propMap.getPrecedenceProposition(op2, op1) != null) {
+						// at least one must be false
+						int p12 = propMap.getPrecedenceProposition(op1, op2);
+						int p21 = propMap.getPrecedenceProposition(op2, op1);
+						clauses.addClause(-p12, -p21);
+					}
 				}
 			}
-		}
+		});
 	}
 
 
@@ -780,129 +1053,155 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 
 	protected void buildDomainEqualityClosureConstraints() {
 
-		List<Variable> vars = new ArrayList<Variable>(plan.getOriginalSub().getVariables());
+		final List<Variable> vars = new ArrayList<Variable>(plan.getOriginalSub().getVariables());
 
-		for (int i = 0; i < vars.size(); i++) {
-			Variable v1 = vars.get(i);
-			List<Constant> v1Domain = null;
-			if (plan.getInitSub().getVariables().contains(v1)) {
-				v1Domain = new ArrayList<Constant>();
-				v1Domain.add(plan.getInitSub().apply(v1));
-			}
-			else if (plan.getGoalSub().getVariables().contains(v1)) {
-				v1Domain = new ArrayList<Constant>();
-				v1Domain.add(plan.getGoalSub().apply(v1));
-			}
-			else
-				v1Domain = constantsByType.get(v1.getType());
+		// one task per v1
+		buildClauses(vars.size(), new ClauseTask() {
+			@Override
+			public void build(int i, ClauseBuffer clauses) {
+				Variable v1 = vars.get(i);
+				List<Constant> v1Domain = null;
+				if (plan.getInitSub().getVariables().contains(v1)) {
+					v1Domain = new ArrayList<Constant>();
+					v1Domain.add(plan.getInitSub().apply(v1));
+				}
+				else if (plan.getGoalSub().getVariables().contains(v1)) {
+					v1Domain = new ArrayList<Constant>();
+					v1Domain.add(plan.getGoalSub().apply(v1));
+				}
+				else
+					v1Domain = constantsByType.get(v1.getType());
 
-			for (int j = i + 1; j < vars.size(); j++) {
-				Variable v2 = vars.get(j);
-				Integer eq12 = propMap.getEqualityProposition(v1, v2);
-				if (eq12 != null) { 
+				for (int j = i + 1; j < vars.size(); j++) {
+					Variable v2 = vars.get(j);
+					Integer eq12 = propMap.getEqualityProposition(v1, v2);
+					if (eq12 != null) { 
 
-					List<Constant> v2Domain = null;
-					if (plan.getInitSub().getVariables().contains(v2)) {
-						v2Domain = new ArrayList<Constant>();
-						v2Domain.add(plan.getInitSub().apply(v2));
-					}
-					else if (plan.getGoalSub().getVariables().contains(v2)) {
-						v2Domain = new ArrayList<Constant>();
-						v2Domain.add(plan.getGoalSub().apply(v2));
-					}
-					else
-						v2Domain = constantsByType.get(v2.getType());
-
-					List<Constant> intersection = new ArrayList<Constant>(v1Domain);
-					intersection.retainAll(v2Domain);
-					// v1 = v2 <-> (v1 = c1 -> v2 = c1)
-					for (Constant c : intersection) {
-						int[] lr = new int[3];
-						lr[0] = -eq12;
-						lr[1] = -getVariableAssignmentProposition(v1, c);
-						lr[2] = getVariableAssignmentProposition(v2, c);					
-						satFormula.addClause(lr);
-
-						int[] rl = new int[3];
-						rl[0] = eq12;
-						rl[1] = -getVariableAssignmentProposition(v1, c);
-						rl[2] = -getVariableAssignmentProposition(v2, c);					
-						satFormula.addClause(rl);
-					}
+						List<Constant> v2Domain = null;
+						if (plan.getInitSub().getVariables().contains(v2)) {
+							v2Domain = new ArrayList<Constant>();
+							v2Domain.add(plan.getInitSub().apply(v2));
+						}
+						else if (plan.getGoalSub().getVariables().contains(v2)) {
+							v2Domain = new ArrayList<Constant>();
+							v2Domain.add(plan.getGoalSub().apply(v2));
+						}
+						else
+							v2Domain = constantsByType.get(v2.getType());
 
-					// v1 = v2 -> v1 must be bound to a value in intersection
-					if (intersection.size() < v1Domain.size()) {
-						int[] clause = new int[intersection.size()+1];
-						clause[0] = -eq12;
-						int k = 1;
+						List<Constant> intersection = new ArrayList<Constant>(v1Domain);
+						intersection.retainAll(v2Domain);
+						// v1 = v2 <-> (v1 = c1 -> v2 = c1)
 						for (Constant c : intersection) {
-							clause[k] = getVariableAssignmentProposition(v1, c);
-							k++;
+							int[] lr = new int[3];
+							lr[0] = -eq12;
+							lr[1] = -getVariableAssignmentProposition(v1, c);
+							lr[2] = getVariableAssignmentProposition(v2, c);					
+							clauses.addClause(lr);
+
+							int[] rl = new int[3];
+							rl[0] = eq12;
+							rl[1] = -getVariableAssignmentProposition(v1, c);
+							rl[2] = -getVariableAssignmentProposition(v2, c);					
+							clauses.addClause(rl);
 						}
-						satFormula.addClause(clause);
-					}
 
-					if (intersection.size() < v2Domain.size()) {
-						int[] clause = new int[intersection.size()+1];
-						clause[0] = -eq12;
-						int k = 1;
-						for (Constant c : intersection) {
-							clause[k] = getVariableAssignmentProposition(v2, c);
-							k++;
+						// v1 = v2 -> v1 must be bound to a value in intersection
+						if (intersection.size() < v1Domain.size()) {
+							int[] clause = new int[intersection.size()+1];
+							clause[0] = -eq12;
+							int k = 1;
+							for (Constant c : intersection) {
+								clause[k] = getVariableAssignmentProposition(v1, c);
+								k++;
+							}
+							clauses.addClause(clause);
+						}
+
+						if (intersection.size() < v2Domain.size()) {
+							int[] clause = new int[intersection.size()+1];
+							clause[0] = -eq12;
+							int k = 1;
+							for (Constant c : intersection) {
+								clause[k] = getVariableAssignmentProposition(v2, c);
+								k++;
+							}
+							clauses.addClause(clause);
 						}
-						satFormula.addClause(clause);
 					}
 				}
 			}
-		}
+		});
 	}
 
 	protected void buildAtomEqualityClosureConstraints() {
 
-		List<Variable> vars = new ArrayList<Variable>(plan.getOriginalSub().getVariables());
+		final List<Variable> vars = new ArrayList<Variable>(plan.getOriginalSub().getVariables());
 		Collections.sort(vars,  Comparators.SYMBOL_COMPARATOR);
-		for (int i = 0; i < vars.size(); i++) {
-			Variable v1 = vars.get(i);
-			for (int j = i+1; j < vars.size(); j++) {
-				if (j == i) //wtf
+		if (vars.isEmpty())
+			return;
+
+		// the first row adds any missing propositions, so is built sequentially
+		Variable v1 = vars.get(0);
+		for (int j = 1; j < vars.size(); j++) {
+			Variable v2 = vars.get(j);
+			Integer p12 = propMap.getEqualityProposition(v1, v2);
+			if (p12 == null) {
+				if (options.optTransClosure)
 					continue;
-				Variable v2 = vars.get(j);
-				Integer p12 = propMap.getEqualityProposition(v1, v2);
-				if (p12 == null) {
+				else
+					p12 = propMap.addEqualityProposition(v1, v2);
+			}
+
+			for (int k = j+1; k < vars.size(); k++) {
+				Variable v3 = vars.get(k);
+				Integer p13 = propMap.getEqualityProposition(v1, v3);
+
+				if (p13 == null) {
 					if (options.optTransClosure)
 						continue;
 					else
-						p12 = propMap.addEqualityProposition(v1, v2);
+						p13 = propMap.addEqualityProposition(v1, v3);
 				}
 
-				for (int k = j+1; k < vars.size(); k++) {
-					if (k == i || k == j)
+				Integer p23 = propMap.getEqualityProposition(v2, v3);
+				if (p23 == null) {
+					if (options.optTransClosure)
 						continue;
+					else
+						p23 = propMap.addEqualityProposition(v2, v3);
+				}
 
-					Variable v3 = vars.get(k);
-					Integer p13 = propMap.getEqualityProposition(v1, v3);
+				satFormula.addClause(-p23, -p13, p12);
+				satFormula.addClause(-p12, -p23, p13);
+				satFormula.addClause(-p12, -p13, p23);
+			}
+		}
 
-					if (p13 == null) {
-						if (options.optTransClosure)
-							continue;
-						else
-							p13 = propMap.addEqualityProposition(v1, v3);
-					}
+		// the remaining rows only read propositions, one task per v1
+		final int[][] eq = getEqualityPropositionMatrix(vars);
+		buildClauses(vars.size() - 1, new ClauseTask() {
+			@Override
+			public void build(int t, ClauseBuffer clauses) {
+				int i = t + 1;
+				for (int j = i+1; j < vars.size(); j++) {
+					int p12 = eq[i][j];
+					if (p12 == 0)
+						continue;
 
-					Integer p23 = propMap.getEqualityProposition(v2, v3);
-					if (p23 == null) {
-						if (options.optTransClosure)
+					for (int k = j+1; k < vars.size(); k++) {
+						int p13 = eq[i][k];
+						int p23 = eq[j][k];
+						if (p13 == 0 || p23 == 0)
 							continue;
-						else
-							p23 = propMap.addEqualityProposition(v2, v3);
-					}
 
-					satFormula.addClause(-p23, -p13, p12);
-					satFormula.addClause(-p12, -p23, p13);
-					satFormula.addClause(-p12, -p13, p23);
+						clauses.addClause(-p23, -p13, p12);
+						clauses.addClause(-p12, -p23, p13);
+						clauses.addClause(-p12, -p13, p23);
+					}
 				}
 			}
-		}
+		});
 	}
 
 
@@ -923,31 +1222,7 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 					propMap.addVariableAssignmentProposition(v, c);
 			}
 
-			// domain constraints -- exactly one of v = c1 or v = c2 etc
-			for (Variable v : vars) {
-				// at least one
-				List<Constant> domain = constantsByType.get(v.getType());
-				int[] alc = new int[domain.size()];
-				int c = 0;
-				for (Constant d : domain) {
-					alc[c] = getVariableAssignmentProposition(v, d);
-					c++;
-				}
-				satFormula.addClause(alc);
-
-				// at most one
-				for (int d1 = 0; d1 < domain.size(); d1++) {
-					Constant c1 = domain.get(d1);
-					for (int d2 = d1+1; d2 < domain.size(); d2++) {
-						Constant c2 = domain.get(d2);
-						int[] amo = new int[2];
-						amo[0] = -getVariableAssignmentProposition(v, c1);
-						amo[1] = -getVariableAssignmentProposition(v, c2);
-
-						satFormula.addClause(amo);
-					}
-				}
-			}
+			buildDomainConstraints(new ArrayList<Variable>(vars));
 
 			// vars in init 
 			for (Variable v : plan.getInitAction().getVariables()) {
@@ -975,31 +1250,7 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 						propMap.addEqualityProposition(v, constantVars.get(c));
 			}
 
-			// domain constraints -- exactly one of v = c1 or v = c2 etc
-			for (Variable v : vars) {
-				// at least one
-				List<Constant> domain = constantsByType.get(v.getType());
-				int[] alc = new int[domain.size()];
-				int c = 0;
-				for (Constant d : domain) {
-					alc[c] = getVariableAssignmentProposition(v, d);
-					c++;
-				}
-				satFormula.addClause(alc);
-
-				// at most one
-				for (int d1 = 0; d1 < domain.size(); d1++) {
-					Constant c1 = domain.get(d1);
-					for (int d2 = d1+1; d2 < domain.size(); d2++) {
-						Constant c2 = domain.get(d2);
-						int[] amo = new int[2];
-						amo[0] = -getVariableAssignmentProposition(v, c1);
-						amo[1] = -getVariableAssignmentProposition(v, c2);
-
-						satFormula.addClause(amo);
-					}
-				}
-			}
+			buildDomainConstraints(new ArrayList<Variable>(vars));
 
 			// vars in init -- all different
 			List<Variable> initVars = new ArrayList<Variable>(plan.getInitAction().getVariables());
@@ -1028,9 +1279,43 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 		}
 	}
 
+	/**
+	 * Exactly one of v = c1 or v = c2 etc, one task per variable. Props for
+	 * the at-most-one encoding are added first, in variable order.
+	 */
+	protected void buildDomainConstraints(final List<Variable> vars) {
+		final int[][] amoAux = new int[vars.size()][];
+		for (int i = 0; i < vars.size(); i++) {
+			Variable v = vars.get(i);
+			amoAux[i] = new int[AtMostOne.getNumAuxProps(options.amoOpt, constantsByType.get(v.getType()).size())];
+			for (int a = 0; a < amoAux[i].length; a++)
+				amoAux[i][a] = propMap.addEncodedObject("amo-aux-" + v + "-" + a);
+		}
+
+		buildClauses(vars.size(), new ClauseTask() {
+			@Override
+			public void build(int i, ClauseBuffer clauses) {
+				Variable v = vars.get(i);
+
+				// at least one
+				List<Constant> domain = constantsByType.get(v.getType());
+				int[] alc = new int[domain.size()];
+				int c = 0;
+				for (Constant d : domain) {
+					alc[c] = getVariableAssignmentProposition(v, d);
+					c++;
+				}
+				clauses.addClause(alc);
+
+				// at most one
+				AtMostOne.encode(options.amoOpt, alc, amoAux[i], clauses);
+			}
+		});
+	}
+
 	protected void buildInitGoalOrderingConstraints() {
 
-		if (options.acyclOpt == AcyclicityOpt.ATOM) {
+		if (options.acyclOpt == AcyclicityOpt.ATOM || options.acyclOpt == AcyclicityOpt.SPARSE) {
 			// init goal prec props
 			for (int i = 1; i < plan.getPlanSteps().size()-1; i++) {
 				buildPrecProp(plan.getInitAction(), plan.getPlanSteps().get(i));
@@ -1084,12 +1369,18 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 	/* 
 	 * SYMMETRY BREAKING CONSTRAINTS
 	 */
-	protected void buildSymmetryBreakingConstraints() {
+	protected void buildSymmetryBreakingConstraints(AsymmetryOpt asymm) {
+
+		if (options.verbose)
+			System.out.println("Building symmetry breaking constraints");
 
 		int nClauses = satFormula.getNumClauses();
 		int nProps = satFormula.getNumProps();
+		lexRoot = new LexNode();
+		nLexAux = 0;
+		nSharedLexPositions = 0;
 
-		switch (options.asymmOpt) {
+		switch (asymm) {
 		case NONE:
 			break;
 		case OP_TYPES: 
@@ -1102,7 +1393,7 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 			breakStructuralSymmetries(false);
 			break;
 		default:
-			throw new IllegalArgumentException("Unsupported symmetry breaking arg: " + options.asymmOpt);
+			throw new IllegalArgumentException("Unsupported symmetry breaking arg: " + asymm);
 		}
 
 		this.nSymmetryClauses = satFormula.getNumClauses() - nClauses;
@@ -1110,6 +1401,8 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 		if (options.verbose) {
 			System.out.println("Added " + nSymmetryProps + " symmetry breaking propositions");
 			System.out.println("Added " + nSymmetryClauses + " symmetry breaking constraints");
+			if (nSharedLexPositions > 0)
+				System.out.println("Shared " + nSharedLexPositions + " lex-leader chain positions between generators");
 		}
 	}
 
@@ -1248,52 +1541,54 @@ public class ClToSatEncoder extends ConstraintEncoder<SatFormula, CnfEncoderOpti
 			return;
 		}
 
-		if (arr.size() == 1) {
-			satFormula.addClause(-arr.get(0), img.get(0));
-			return;
-		}
-
-		if (arr.size() == 1) {
-			// arr[0] <= img[0], ie arr[0] -> img[0]
-			satFormula.addClause(-arr.get(0), img.get(0));
-			return;
-		}
-
-		// length > 1
-
-		// make n-1 aux variables
-		List<Integer> aux = new ArrayList<Integer>();
-		for (int i = 0; i < arr.size()-1; i++) {
-			aux.add(propMap.addEncodedObject("multilex-aux-"+i));
-		}
-
-
-		// arr[0] <= img[0], ie arr[0] -> img[0]
-		satFormula.addClause(-arr.get(0), img.get(0));
-
-		// x_1 <-> arr_1 == img_1
-		satFormula.addClause(-arr.get(0), -img.get(0), aux.get(0));
-		satFormula.addClause(-arr.get(0), img.get(0), -aux.get(0));
-		satFormula.addClause(arr.get(0), -img.get(0), -aux.get(0));
-		satFormula.addClause(arr.get(0), img.get(0), aux.get(0));
-
-
-		for (int i = 1; i < img.size()-1; i++) {
-			satFormula.addClause(-arr.get(i), -img.get(i), aux.get(i), -aux.get(i-1));
-			satFormula.addClause(-arr.get(i), img.get(i), -aux.get(i));
-			satFormula.addClause(arr.get(i), -img.get(i), -aux.get(i));
-			satFormula.addClause(arr.get(i), img.get(i), aux.get(i), -aux.get(i-1));
-			satFormula.addClause(-aux.get(i), aux.get(i-1));
-		}
-
-
-		for (int i = 1; i < arr.size(); i++) {
-			satFormula.addClause(-aux.get(i-1), -arr.get(i), img.get(i));
+		// walk the chain down the trie, only encoding positions not already
+		// encoded for a previous generator with the same prefix
+		LexNode node = lexRoot;
+		for (int i = 0; i < arr.size(); i++) {
+			Pair<Integer, Integer> pos = Pair.instance(arr.get(i), img.get(i));
+			LexNode next = node.children.get(pos);
+			if (next == null) {
+				next = new LexNode();
+				node.children.put(pos, next);
+
+				if (i == 0) // arr[0] <= img[0], ie arr[0] -> img[0]
+					satFormula.addClause(-arr.get(0), img.get(0));
+				else // prefix equal -> arr[i] <= img[i]
+					satFormula.addClause(-node.aux, -arr.get(i), img.get(i));
+			}
+			else
+				nSharedLexPositions++;
+
+			// x_i <-> x_i-1 and arr_i == img_i, only needed if the chain continues
+			if (i < arr.size() - 1 && next.aux == 0) {
+				next.aux = propMap.addEncodedObject("multilex-aux-" + nLexAux++);
+				if (i == 0) {
+					satFormula.addClause(-arr.get(0), -img.get(0), next.aux);
+					satFormula.addClause(-arr.get(0), img.get(0), -next.aux);
+					satFormula.addClause(arr.get(0), -img.get(0), -next.aux);
+					satFormula.addClause(arr.get(0), img.get(0), next.aux);
+				} else {
+					satFormula.addClause(-arr.get(i), -img.get(i), next.aux, -node.aux);
+					satFormula.addClause(-arr.get(i), img.get(i), -next.aux);
+					satFormula.addClause(arr.get(i), -img.get(i), -next.aux);
+					satFormula.addClause(arr.get(i), img.get(i), next.aux, -node.aux);
+					satFormula.addClause(-next.aux, node.aux);
+				}
+			}
+			node = next;
 		}
-
 	}
 
-
+	/**
+	 * A position in a lex-leader chain. The chains of all generators are kept
+	 * in a trie keyed by the (arr, img) propositions at each position, so the
+	 * clauses and auxiliary variables of a shared prefix are only built once.
+	 */
+	protected static class LexNode {
+		// true iff arr and img are equal up to and including this position, 0 if not built
+		int aux;
+		final Map<Pair<Integer, Integer>, LexNode> children = new HashMap<Pair<Integer, Integer>, LexNode>();
+	}
 
 
 	protected void breakOperatorTypeSymmetries() {
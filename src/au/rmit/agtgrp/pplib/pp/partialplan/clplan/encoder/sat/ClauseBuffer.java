@@ -0,0 +1,80 @@
+package au.rmit.agtgrp.pplib.pp.partialplan.clplan.encoder.sat;
+
+import au.rmit.agtgrp.pplib.sat.SatFormula;
+
+/**
+ * Clauses built by one encoder task, stored in a flat array as a length
+ * followed by the literals of each clause. Buffers are added to the formula
+ * in task order once the tasks finish, so the formula does not depend on
+ * which tasks ran first.
+ */
+public class ClauseBuffer {
+
+	private int[] data;
+	private int size;
+	private int[][] scratch; // reusable clause arrays, indexed by length
+
+	public ClauseBuffer() {
+		data = new int[1024];
+		size = 0;
+		scratch = new int[4][];
+	}
+
+	public void addClause(int l1, int l2) {
+		ensureCapacity(3);
+		data[size++] = 2;
+		data[size++] = l1;
+		data[size++] = l2;
+	}
+
+	public void addClause(int l1, int l2, int l3) {
+		ensureCapacity(4);
+		data[size++] = 3;
+		data[size++] = l1;
+		data[size++] = l2;
+		data[size++] = l3;
+	}
+
+	public void addClause(int ... clause) {
+		ensureCapacity(clause.length + 1);
+		data[size++] = clause.length;
+		System.arraycopy(clause, 0, data, size, clause.length);
+		size+=clause.length;
+	}
+
+	/**
+	 * Adds the clauses to the formula, in the order they were added to the
+	 * buffer, and empties the buffer.
+	 */
+	public void addTo(SatFormula formula) {
+		int i = 0;
+		while (i < size) {
+			int length = data[i++];
+			int[] clause = getScratch(length);
+			System.arraycopy(data, i, clause, 0, length);
+			formula.addClause(clause);
+			i+=length;
+		}
+		size = 0;
+	}
+
+	private int[] getScratch(int length) {
+		if (length >= scratch.length) {
+			int[][] larger = new int[length + 1][];
+			System.arraycopy(scratch, 0, larger, 0, scratch.length);
+			scratch = larger;
+		}
+		if (scratch[length] == null)
+			scratch[length] = new int[length];
+		return scratch[length];
+	}
+
+	private void ensureCapacity(int n) {
+		if (size + n > data.length) {
+			int[] larger = new int[Math.max(data.length * 2, size + n)];
+			System.arraycopy(data, 0, larger, 0, size);
+			data = larger;
+		}
+	}
+
+}
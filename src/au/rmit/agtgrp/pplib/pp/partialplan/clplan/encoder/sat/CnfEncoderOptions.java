@@ -12,13 +12,17 @@ public class CnfEncoderOptions {
 	}
 
 	public enum AcyclicityOpt {
-		ATOM, BINARY
+		ATOM, BINARY, SPARSE // SPARSE: as ATOM, restricted to steps that can reach each other
 	}
 	
 	public enum EqualityOpt {
 		NONE, ATOM, IDX
 	}
 	
+	public enum AtMostOneOpt {
+		PAIRWISE, SEQUENTIAL, COMMANDER, PRODUCT
+	}
+	
 	public enum CausalStructureOpt {
 		REORDER, DEORDER, CUSTOM
 	}
@@ -37,9 +41,17 @@ public class CnfEncoderOptions {
 	public final long optTime;
 	public final boolean optTransClosure;
 	public final DirectedGraph<Operator<Variable>> customPrecGraph;
+	public final AtMostOneOpt amoOpt; // encoding of variable domains
+	public final int nThreads; // threads used to build the closure and domain clauses
 	
 	public CnfEncoderOptions(AsymmetryOpt asymm, EqualityOpt equality, AcyclicityOpt acycl, CausalStructureOpt csOpt, ThreatRestriction threatRest,
 			OutputOpt outOpt, long optTime, boolean optTransClosure, boolean verbose, DirectedGraph<Operator<Variable>> customPrecGraph) {
+		this(asymm, equality, acycl, csOpt, threatRest, outOpt, optTime, optTransClosure, verbose, customPrecGraph, AtMostOneOpt.PAIRWISE, 1);
+	}
+	
+	public CnfEncoderOptions(AsymmetryOpt asymm, EqualityOpt equality, AcyclicityOpt acycl, CausalStructureOpt csOpt, ThreatRestriction threatRest,
+			OutputOpt outOpt, long optTime, boolean optTransClosure, boolean verbose, DirectedGraph<Operator<Variable>> customPrecGraph,
+			AtMostOneOpt amoOpt, int nThreads) {
 		this.verbose = verbose;
 		this.asymmOpt = asymm;
 		this.acyclOpt = acycl;
@@ -50,6 +62,8 @@ public class CnfEncoderOptions {
 		this.optTransClosure = optTransClosure;	
 		this.equalityOpt = equality;
 		this.customPrecGraph = customPrecGraph;
+		this.amoOpt = amoOpt;
+		this.nThreads = nThreads;
 	}
 	
 	
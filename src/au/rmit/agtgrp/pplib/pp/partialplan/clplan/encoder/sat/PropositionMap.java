@@ -6,7 +6,6 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import au.rmit.agtgrp.pplib.fol.Substitution;
 import au.rmit.agtgrp.pplib.fol.function.Constant;
@@ -22,6 +21,7 @@ import au.rmit.agtgrp.pplib.pddl.pct.Threat;
 import au.rmit.agtgrp.pplib.pp.partialplan.PartialPlan;
 import au.rmit.agtgrp.pplib.utils.collections.Bijection;
 import au.rmit.agtgrp.pplib.utils.collections.HashBijection;
+import au.rmit.agtgrp.pplib.utils.collections.LongIntHashMap;
 import au.rmit.agtgrp.pplib.utils.collections.Pair;
 import au.rmit.agtgrp.pplib.utils.collections.Triple;
 import au.rmit.agtgrp.pplib.utils.collections.graph.DirectedGraph;
@@ -31,20 +31,20 @@ public class PropositionMap implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
-	//private final List<Object> objsList;
-	private final transient Bijection<Object, Integer> objPropMap;
-	
-	private final transient Bijection<PcLink, Integer> pclToPropMap;
-	private final transient Bijection<Pair<PcLink, Threat>, Integer> threatToPropMap;
-
-	private final transient Bijection<EqualityObj, Integer> eqToPropMap;	
-	private final transient Bijection<VariableAssignmentObj, Integer> assToPropMap;
-	private final transient Bijection<PrecedenceObj, Integer> precToPropMap;
-
-	private final transient Bijection<Pair<Operator<Variable>, Integer>, Integer> opEncodingPropMap;
-	private final transient Bijection<Triple<Operator<Variable>, Operator<Variable>, Integer>, Integer> precEncodingToPropMap;
-
-	private final transient Bijection<Pair<Variable, Variable>, Integer> varPrecToPropMap;
+	// the object encoded by each proposition, indexed by p-1
+	private final transient List<Object> objsList;
+	private final transient Map<Object, Integer> objPropMap;
+
+	// dense ids for the steps, variables, constants, producers, consumers and
+	// threats in propositions, so that lookups do not build key objects
+	private final transient Map<Object, Integer> ids;
+	private final transient LongIntHashMap[] precProps; // indexed by k-1
+	private final transient LongIntHashMap eqProps;
+	private final transient LongIntHashMap assProps;
+	private final transient LongIntHashMap opEncodingProps;
+	private final transient LongIntHashMap pclProps;
+	private final transient LongIntHashMap threatProps; // keyed by pc link prop
+	private final transient LongIntHashMap varPrecProps;
 
 	private final int opEncodingBits;
 
@@ -52,85 +52,127 @@ public class PropositionMap implements Serializable {
 
 	public PropositionMap(PropositionMap copyMe) {
 		this(copyMe.opEncodingBits);
-		//this.objsList.addAll(copyMe.objsList);
+		this.objsList.addAll(copyMe.objsList);
 		this.objPropMap.putAll(copyMe.objPropMap);
-		this.pclToPropMap.putAll(copyMe.pclToPropMap);
-		this.threatToPropMap.putAll(copyMe.threatToPropMap);
-		this.eqToPropMap.putAll(copyMe.eqToPropMap);
-		this.assToPropMap.putAll(copyMe.assToPropMap);
-		this.precToPropMap.putAll(copyMe.precToPropMap);
-		this.opEncodingPropMap.putAll(copyMe.opEncodingPropMap);
-		this.precEncodingToPropMap.putAll(copyMe.precEncodingToPropMap);
-		this.varPrecToPropMap.putAll(copyMe.varPrecToPropMap);
+		this.ids.putAll(copyMe.ids);
+		for (int k = 0; k < opEncodingBits; k++)
+			this.precProps[k].putAll(copyMe.precProps[k]);
+		this.eqProps.putAll(copyMe.eqProps);
+		this.assProps.putAll(copyMe.assProps);
+		this.opEncodingProps.putAll(copyMe.opEncodingProps);
+		this.pclProps.putAll(copyMe.pclProps);
+		this.threatProps.putAll(copyMe.threatProps);
+		this.varPrecProps.putAll(copyMe.varPrecProps);
 		this.p = copyMe.p;	
 	}
 	
 	public PropositionMap(int opEncodingBits) {
 		this.opEncodingBits = opEncodingBits;
 
-		//objsList = new ArrayList<Object>();
-		objPropMap = new HashBijection<Object,Integer>();
-		
-		pclToPropMap = new HashBijection<PcLink, Integer>();
-		threatToPropMap = new HashBijection<Pair<PcLink, Threat>, Integer>();
+		objsList = new ArrayList<Object>();
+		objPropMap = new HashMap<Object, Integer>();
 
-		eqToPropMap = new HashBijection<EqualityObj, Integer>();
-		assToPropMap = new HashBijection<VariableAssignmentObj, Integer>();
-		precToPropMap = new HashBijection<PrecedenceObj, Integer>();
+		ids = new HashMap<Object, Integer>();
+		precProps = new LongIntHashMap[opEncodingBits];
+		for (int k = 0; k < opEncodingBits; k++)
+			precProps[k] = new LongIntHashMap();
+		eqProps = new LongIntHashMap();
+		assProps = new LongIntHashMap();
+		opEncodingProps = new LongIntHashMap();
+		pclProps = new LongIntHashMap();
+		threatProps = new LongIntHashMap();
+		varPrecProps = new LongIntHashMap();
 
-		varPrecToPropMap = new HashBijection<Pair<Variable, Variable>, Integer>();
+		p = 1;
+	}
 
-		precEncodingToPropMap = new HashBijection<Triple<Operator<Variable>, Operator<Variable>, Integer>, Integer>();
-		opEncodingPropMap = new HashBijection<Pair<Operator<Variable>, Integer>, Integer>();
+	private int addId(Object o) {
+		Integer id = ids.get(o);
+		if (id == null) {
+			id = ids.size();
+			ids.put(o, id);
+		}
+		return id;
+	}
 
-		p = 1;
+	private int getId(Object o) {
+		Integer id = ids.get(o);
+		return id == null ? -1 : id;
 	}
-	
-	public Bijection<PrecedenceObj, Integer> getPrecedencePropositionMap() {
-		return precToPropMap;
+
+	private static long key(int id1, int id2) {
+		return ((long) id1 << 32) | id2;
 	}
-	
-	public Bijection<VariableAssignmentObj, Integer> getVarAssignmentPropositionMap() {
-		return assToPropMap;
+
+	private static long unorderedKey(int id1, int id2) {
+		return id1 < id2 ? key(id1, id2) : key(id2, id1);
 	}
-	
-	public Bijection<EqualityObj, Integer> getVarEqualityPropositionMap() {
-		return eqToPropMap;
+
+	private static Integer toProp(int prop) {
+		return prop == 0 ? null : prop;
+	}
+
+	private int addProp(Object o) {
+		objsList.add(o);
+		return p++;
+	}
+
+	private Object getObject(int prop) {
+		return prop > 0 && prop <= objsList.size() ? objsList.get(prop-1) : null;
+	}
+
+	private <T> Bijection<T, Integer> getPropositionMap(Class<T> type) {
+		Bijection<T, Integer> map = new HashBijection<T, Integer>();
+		for (int i = 0; i < objsList.size(); i++) {
+			if (type.isInstance(objsList.get(i)))
+				map.put(type.cast(objsList.get(i)), i+1);
+		}
+		return map;
 	}
 	
-	public Bijection<PcLink, Integer> getPcLinkPropositionMap() {
-		return pclToPropMap;
+	/**
+	 * Returns a snapshot of the full precedence propositions.
+	 */
+	public Bijection<PrecedenceObj, Integer> getPrecedencePropositionMap() {
+		return getPropositionMap(PrecedenceObj.class);
 	}
 	
-	public Bijection<Pair<PcLink, Threat>, Integer> getThreatToPropositionMap() {
-		return threatToPropMap;
+	/**
+	 * Returns a snapshot of the equality propositions.
+	 */
+	public Bijection<EqualityObj, Integer> getVarEqualityPropositionMap() {
+		return getPropositionMap(EqualityObj.class);
 	}
 	
 	public int addOperatorIdxEncodingProp(Operator<Variable> op1, int k) {
 		if (k < 1 || k > opEncodingBits)
 			throw new IllegalArgumentException("Arg: " + k);
 
-		Pair<Operator<Variable>, Integer> pair = Pair.instance(op1, k).intern();
-		opEncodingPropMap.put(pair, p);
-		//objsList.add(pair);
-		return p++;
+		opEncodingProps.put(key(addId(op1), k), p);
+		return addProp(Pair.instance(op1, k));
 	}
 
 	public Integer getOperatorIdxEncodingProp(Operator<Variable> op1, int k) {
 		if (k < 1 || k > opEncodingBits)
 			throw new IllegalArgumentException("Arg: " + k);
 
-		return this.opEncodingPropMap.get(Pair.instance(op1, k));
+		int id = getId(op1);
+		return id < 0 ? null : toProp(opEncodingProps.get(key(id, k), 0));
 	}
 
 	public int addVariablePrecProp(Variable v1, Variable v2) {
-		varPrecToPropMap.put(formatPair(v1, v2), p);
-		//objsList.add(pair);
-		return p++;
+		Pair<Variable, Variable> pair = formatPair(v1, v2);
+		varPrecProps.put(unorderedKey(addId(v1), addId(v2)), p);
+		return addProp(pair);
 	}
 
 	public int getVariablePrecProp(Variable v1, Variable v2) {
-		return varPrecToPropMap.get(formatPair(v1, v2));
+		int id1 = getId(v1);
+		int id2 = getId(v2);
+		int prop = id1 < 0 || id2 < 0 ? 0 : varPrecProps.get(unorderedKey(id1, id2), 0);
+		if (prop == 0)
+			throw new IllegalArgumentException("No proposition for " + v1 + "," + v2);
+		return prop;
 	}
 
 	public int addPrecedenceProposition(Operator<Variable> op1, Operator<Variable> op2) {
@@ -141,18 +183,11 @@ public class PropositionMap implements Serializable {
 		if (k < 1 || k > opEncodingBits)
 			throw new IllegalArgumentException("Arg: " + k);
 
-		if (k == opEncodingBits) {
-			PrecedenceObj p1 = new PrecedenceObj(op1, op2).intern();
-			precToPropMap.put(p1, p);
-			//objsList.add(p1);
-			return p++;
-		}
-		else {
-			Triple<Operator<Variable>, Operator<Variable>, Integer> p1 = Triple.instance(op1, op2, k).intern();
-			precEncodingToPropMap.put(p1, p);
-			//objsList.add(p1);
-			return p++;
-		}
+		precProps[k-1].put(key(addId(op1), addId(op2)), p);
+		if (k == opEncodingBits)
+			return addProp(new PrecedenceObj(op1, op2));
+		else
+			return addProp(Triple.instance(op1, op2, k));
 	}
 
 	public Integer getPrecedenceProposition(Operator<Variable> op1, Operator<Variable> op2) {
@@ -163,16 +198,16 @@ public class PropositionMap implements Serializable {
 		if (k < 1 || k > opEncodingBits)
 			throw new IllegalArgumentException("Arg: " + k);
 
-		if (k == opEncodingBits)
-			return precToPropMap.get(new PrecedenceObj(op1, op2).intern());
-		else
-			return precEncodingToPropMap.get(Triple.instance(op1, op2, k).intern());
+		int id1 = getId(op1);
+		int id2 = getId(op2);
+		if (id1 < 0 || id2 < 0)
+			return null;
+		return toProp(precProps[k-1].get(key(id1, id2), 0));
 	}
 
 	public int addEncodedObject(Object o) {
-		//objsList.add(o);
 		objPropMap.put(o, p);
-		return p++;
+		return addProp(o);
 	}
 	
 	public Integer getObjectEncoding(Object o) {
@@ -180,80 +215,62 @@ public class PropositionMap implements Serializable {
 	}
 
 	public Object getEncodedObject(int i) {
-		Object o = objPropMap.getKey(i);
-		if (o != null)
-			return o;
-		o = this.assToPropMap.getKey(i);
-		if (o != null)
-			return o;
-		
-		o = this.eqToPropMap.getKey(i);
-		if (o != null)
-			return o;
-		
-		o = this.opEncodingPropMap.getKey(i);
-		if (o != null)
-			return o;
-		
-		o = this.pclToPropMap.getKey(i);
-		if (o != null)
-			return o;
-		
-		o = this.precToPropMap.getKey(i);
-		if (o != null)
-			return o;
-		
-		o = this.threatToPropMap.getKey(i);
-		if (o != null)
-			return o;
-		
-		o = this.varPrecToPropMap.getKey(i);
-		if (o != null)
-			return o;
-		
-		throw new IllegalArgumentException("Cannot find object for proposition " + i);
+		Object o = getObject(i);
+		if (o == null)
+			throw new IllegalArgumentException("Cannot find object for proposition " + i);
+		return o;
 	}
 	
 	public PrecedenceObj getPrecedenceObj(int prop) {
-		return this.precToPropMap.getKey(prop);
+		Object o = getObject(prop);
+		return o instanceof PrecedenceObj ? (PrecedenceObj) o : null;
 	}
 
 	public int addVariableAssignmentProposition(Variable v, Constant c) {
-		VariableAssignmentObj pair = new VariableAssignmentObj(v, c).intern();
-		assToPropMap.put(pair, p);
-		//objsList.add(pair);
-		return p++;
+		assProps.put(key(addId(v), addId(c)), p);
+		return addProp(new VariableAssignmentObj(v, c));
 	}
 
 	public Integer getVariableAssignmentProposition(Variable v, Constant c) {
-		return assToPropMap.get(new VariableAssignmentObj(v, c));
+		int id1 = getId(v);
+		int id2 = getId(c);
+		if (id1 < 0 || id2 < 0)
+			return null;
+		return toProp(assProps.get(key(id1, id2), 0));
 	}
 
 	public VariableAssignmentObj getVariableAssignmentObj(int prop) {
-		return assToPropMap.getKey(prop);
+		Object o = getObject(prop);
+		return o instanceof VariableAssignmentObj ? (VariableAssignmentObj) o : null;
 	}
 	
 	public int addEqualityProposition(Variable v1, Variable v2) {
-		EqualityObj pair = formatEqualityObj(new EqualityObj(v1, v2).intern());
-		eqToPropMap.put(pair, p);
-		//objsList.add(pair);
-		return p++;
+		EqualityObj eq = formatEqualityObj(new EqualityObj(v1, v2));
+		eqProps.put(unorderedKey(addId(v1), addId(v2)), p);
+		return addProp(eq);
 	}
 
 	public Integer getEqualityProposition(Variable v1, Variable v2) {
-		return eqToPropMap.get(formatEqualityObj(new EqualityObj(v1, v2).intern()));
+		int id1 = getId(v1);
+		int id2 = getId(v2);
+		if (id1 == id2 && id1 >= 0)
+			throw new IllegalArgumentException(v1 + "," + v2);
+		if (id1 < 0 || id2 < 0)
+			return null;
+		return toProp(eqProps.get(unorderedKey(id1, id2), 0));
 	}
 
 	public EqualityObj getEqualityObj(int prop) {
-		return eqToPropMap.getKey(prop);
+		Object o = getObject(prop);
+		return o instanceof EqualityObj ? (EqualityObj) o : null;
 	}
 
 	private <T extends Symbol> Pair<T, T> formatPair(T v1, T v2) {
 		int c = v1.getName().compareTo(v2.getName());
 		if (c < 0)
-			return Pair.instance(v1, v2).intern();
+			return Pair.instance(v1, v2);
 		else if (c > 0)
-			return Pair.instance(v2, v1).intern();
+			return Pair.instance(v2, v1);
 		else
 			throw new IllegalArgumentException(v1 + "," + v2);
 	}
@@ -263,47 +280,51 @@ public class PropositionMap implements Serializable {
 		if (c < 0)
 			return obj;
 		else if (c > 0)
-			return new EqualityObj(obj.getSecond(), obj.getFirst()).intern();
+			return new EqualityObj(obj.getSecond(), obj.getFirst());
 		else
 			throw new IllegalArgumentException(obj.getFirst() + "," + obj.getSecond());
 	}
 
 	public int addProducerConsumerProposition(Producer prod, Consumer cons) {
-		return addProducerConsumerProposition(new PcLink(prod, cons).intern());
+		return addProducerConsumerProposition(new PcLink(prod, cons));
 	}
 
 	public int addProducerConsumerProposition(PcLink pcLink) {
-		pclToPropMap.put(pcLink, p);
-		//objsList.add(pcLink);
-		return p++;
+		pclProps.put(key(addId(pcLink.getProducer()), addId(pcLink.getConsumer())), p);
+		return addProp(pcLink);
 	}
 
 	public Integer getProducerConsumerProposition(Producer prod, Consumer cons) {
-		return getProducerConsumerProposition(new PcLink(prod, cons).intern());
+		int id1 = getId(prod);
+		int id2 = getId(cons);
+		if (id1 < 0 || id2 < 0)
+			return null;
+		return toProp(pclProps.get(key(id1, id2), 0));
 	}
 
 	public Integer getProducerConsumerProposition(PcLink pcLink) {
-		return pclToPropMap.get(pcLink);
+		return getProducerConsumerProposition(pcLink.getProducer(), pcLink.getConsumer());
 	}
 
 	public PcLink getProducerConsumerLink(int prop) {
-		return pclToPropMap.getKey(prop);
-	}
-	
-	public Set<PcLink> getAllPcLinks() {
-		return pclToPropMap.keySet();
+		Object o = getObject(prop);
+		return o instanceof PcLink ? (PcLink) o : null;
 	}
 
 	public int addThreatProposition(PcLink link, Threat threat) {
-		Pair<PcLink, Threat> thr = Pair.instance(link, threat).intern();
-		threatToPropMap.put(thr, p);
-		//objsList.add(thr);
-		return p++;
+		Integer pclProp = getProducerConsumerProposition(link);
+		if (pclProp == null)
+			throw new IllegalArgumentException("No proposition for " + link);
+		threatProps.put(key(pclProp, addId(threat)), p);
+		return addProp(Pair.instance(link, threat));
 	}
 
 	public Integer getThreatProposition(PcLink link, Threat threat) {
-		Pair<PcLink, Threat> thr = Pair.instance(link, threat).intern();
-		return threatToPropMap.get(thr);
+		Integer pclProp = getProducerConsumerProposition(link);
+		int id = getId(threat);
+		if (pclProp == null || id < 0)
+			return null;
+		return toProp(threatProps.get(key(pclProp, id), 0));
 	}
 
 	public int getNPropositions() {
@@ -168,7 +168,7 @@ public class CspOptimiser {
 			List<Variable> key = it.next();
 			//it.remove();
 
-			Set<Expression<Variable>> cons = new HashSet<Expression<Variable>>(CSP.getConstraints().remove(key));
+			Set<Expression<Variable>> cons = new HashSet<Expression<Variable>>(CSP.removeConstraints(key));
 			Set<ExpressionPropagator> exp = new HashSet<ExpressionPropagator>();
 
 			for (Expression<Variable> con : cons) {
@@ -451,10 +451,7 @@ public class CspOptimiser {
 
 	private static void buildCSP(ExpressionCsp opt, boolean reduce) {
 
-		opt.getVariables().clear();
-		opt.getDomain().clear();
-		opt.getDomains().clear();
-		opt.getConstraints().clear();
+		opt.clear();
 
 		opt.addVariables(VARS);
 
@@ -2,6 +2,7 @@ package au.rmit.agtgrp.pplib.pp.partialplan.clplan.symm;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import au.rmit.agtgrp.pplib.auto.Group;
@@ -23,6 +24,36 @@ import au.rmit.agtgrp.pplib.utils.collections.graph.UndirectedColouredGraph;
 
 public class ClPlanAutomorphisms {
 
+	// the generators of recently seen graphs, so encodings of the same plan
+	// under different options do not call nauty again
+	private static final int AUTOMORPHISM_CACHE_SIZE = 16;
+	private static final Map<UndirectedColouredGraph<Integer, Integer>, NautyResult> AUTOMORPHISM_CACHE =
+			new LinkedHashMap<UndirectedColouredGraph<Integer, Integer>, NautyResult>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<UndirectedColouredGraph<Integer, Integer>, NautyResult> eldest) {
+			return size() > AUTOMORPHISM_CACHE_SIZE;
+		}
+	};
+
+	private static NautyResult getAutomorphisms(UndirectedColouredGraph<Integer, Integer> graph, boolean verbose) {
+		synchronized (AUTOMORPHISM_CACHE) {
+			NautyResult result = AUTOMORPHISM_CACHE.get(graph);
+			if (result != null) {
+				if (verbose)
+					System.out.println("Reusing " + result.generator.getPermutations().size() + " automorphism generators");
+				return result;
+			}
+		}
+
+		NautyResult result = NautyInterface.getAutomorphisms(graph, verbose);
+		synchronized (AUTOMORPHISM_CACHE) {
+			AUTOMORPHISM_CACHE.put(graph, result);
+		}
+		return result;
+	}
+
 
 	public static ClPlanAutomorphisms getPdgAutomorphisms(PcPlan plan, boolean verbose) {
 
@@ -134,7 +165,7 @@ public class ClPlanAutomorphisms {
 			}
 		}
 
-		NautyResult result = NautyInterface.getAutomorphisms(graph, verbose);
+		NautyResult result = getAutomorphisms(graph, verbose);
 
 		Map<Integer, Producer> prodVert = new HashMap<Integer, Producer>();
 		for (Producer prod : prodVerts.keySet())
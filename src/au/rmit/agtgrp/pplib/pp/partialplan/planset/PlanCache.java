@@ -54,6 +54,9 @@ public class PlanCache implements PlanSet {
 		return count;
 	}
 
+	@Override
+	public void close() { }
+
 	@Override
 	public Iterator<Plan> iterator() {
 		return new PctPlanCacheIterator(planFile);
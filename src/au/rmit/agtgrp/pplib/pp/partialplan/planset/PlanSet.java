@@ -20,10 +20,18 @@
  *******************************************************************************/
 package au.rmit.agtgrp.pplib.pp.partialplan.planset;
 
+import java.io.Closeable;
+
 import au.rmit.agtgrp.pplib.pddl.Plan;
 
-public interface PlanSet extends Iterable<Plan> {
+public interface PlanSet extends Iterable<Plan>, Closeable {
 
 	public int getPlanCount();
 
+	/**
+	 * Releases any files backing the set. The set cannot be iterated again.
+	 */
+	@Override
+	public void close();
+
 }
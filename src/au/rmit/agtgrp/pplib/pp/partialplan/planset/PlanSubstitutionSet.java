@@ -20,6 +20,8 @@
  *******************************************************************************/
 package au.rmit.agtgrp.pplib.pp.partialplan.planset;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -44,12 +46,22 @@ public class PlanSubstitutionSet implements PlanSet {
 	protected final int size;
 
 	private final Map<Operator<Variable>, Variable> opVarMap;
+	private final Closeable source;
 
 	public PlanSubstitutionSet(InstantiatablePartialPlan<?> partialPlan, Iterable<Substitution<Constant>> subs, int size) {
+		this(partialPlan, subs, size, null);
+	}
+
+	/**
+	 * As above, where source holds the files subs are read from, and is
+	 * closed with this set.
+	 */
+	public PlanSubstitutionSet(InstantiatablePartialPlan<?> partialPlan, Iterable<Substitution<Constant>> subs, int size, Closeable source) {
 
 		this.partialPlan = partialPlan;
 		this.subs = subs;
 		this.size = size;		
+		this.source = source;
 		opVarMap = PcToCspEncoder.getOperatorVariableMap(partialPlan.getOperators());
 
 	}
@@ -63,6 +75,17 @@ public class PlanSubstitutionSet implements PlanSet {
 		return size;
 	}
 
+	@Override
+	public void close() {
+		if (source != null) {
+			try {
+				source.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
 	private class PartialPctPlanIterator implements Iterator<Plan> {
 
 		private Iterator<Substitution<Constant>> subIt = subs.iterator();
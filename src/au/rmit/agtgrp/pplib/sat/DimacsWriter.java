@@ -0,0 +1,107 @@
+package au.rmit.agtgrp.pplib.sat;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes DIMACS-style text straight into a reusable byte buffer, formatting
+ * integers without going through String objects. The underlying stream only
+ * sees one write per full buffer.
+ */
+public class DimacsWriter implements Flushable, Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_NUMBER_LENGTH = 20; // "-9223372036854775808"
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int pos;
+
+	public DimacsWriter(OutputStream out) {
+		this.out = out;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.pos = 0;
+	}
+
+	public void writeByte(char c) throws IOException {
+		if (pos == buffer.length)
+			drain();
+		buffer[pos++] = (byte) c;
+	}
+
+	public void writeAscii(String s) throws IOException {
+		for (int i = 0; i < s.length(); i++)
+			writeByte(s.charAt(i));
+	}
+
+	public void writeLine(String s) throws IOException {
+		writeAscii(s);
+		writeByte('\n');
+	}
+
+	public void writeInt(int n) throws IOException {
+		writeLong(n);
+	}
+
+	public void writeLong(long n) throws IOException {
+		if (pos + MAX_NUMBER_LENGTH > buffer.length)
+			drain();
+
+		if (n == 0) {
+			buffer[pos++] = '0';
+			return;
+		}
+
+		// digits are produced from the right, working on the negative value
+		// so that Long.MIN_VALUE does not overflow
+		boolean negative = n < 0;
+		if (!negative)
+			n = -n;
+
+		int end = pos + MAX_NUMBER_LENGTH;
+		int i = end;
+		while (n != 0) {
+			buffer[--i] = (byte) ('0' - (n % 10));
+			n /= 10;
+		}
+		if (negative)
+			buffer[--i] = '-';
+
+		int len = end - i;
+		System.arraycopy(buffer, i, buffer, pos, len);
+		pos += len;
+	}
+
+	/**
+	 * Writes literals[from] .. literals[to-1], space separated and terminated
+	 * by " 0\n".
+	 */
+	public void writeClause(int[] literals, int from, int to) throws IOException {
+		for (int i = from; i < to; i++) {
+			writeInt(literals[i]);
+			writeByte(' ');
+		}
+		writeByte('0');
+		writeByte('\n');
+	}
+
+	private void drain() throws IOException {
+		out.write(buffer, 0, pos);
+		pos = 0;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+
+}
@@ -1,23 +1,21 @@
 package au.rmit.agtgrp.pplib.sat;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
 import java.io.Serializable;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
 
 import au.rmit.agtgrp.pplib.utils.FileUtils;
+import au.rmit.agtgrp.pplib.utils.collections.LongIntHashMap;
 import au.rmit.agtgrp.pplib.utils.collections.graph.UndirectedGraph;
 
 public class SatFormula implements Iterable<int[]>, Serializable {
@@ -66,14 +64,14 @@ public class SatFormula implements Iterable<int[]>, Serializable {
 	}
 	
 	public static int[] loadModel(File file) {
-		List<String> lines = new ArrayList<String>();
-		for (String line : FileUtils.readFile(file)) {
-			line = line.trim();
-			if (!line.isEmpty())
-				lines.add(line);
+		try {
+			SatModel model = SatModel.load(file);
+			if (model == null)
+				throw new IllegalArgumentException("No model found in " + file);
+			return model.toLiterals();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
-		String solStr = lines.get(lines.size()-1);
-		return parse(solStr);		
 	}
 	
 	public static SatFormula loadFromFile(File file) throws IOException {
@@ -118,43 +116,109 @@ public class SatFormula implements Iterable<int[]>, Serializable {
 	}
 	 
 
-	protected List<int[]> clauses;
+	private static final int INITIAL_CLAUSE_CAPACITY = 1024;
+	private static final int INITIAL_LITERAL_CAPACITY = 4096;
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	// all clauses are stored back to back in one arena: clause i occupies 
+	// literals[offsets[i]] .. literals[offsets[i+1]-1]
+	protected int[] literals;
+	protected int[] offsets;
+	protected int nClauses;
 	protected int nProps;
 	protected String comment;
 
 	public SatFormula(List<int[]> clauses, int nProps) {
-		this.clauses = clauses;
+		this();
+		for (int[] clause : clauses)
+			appendClause(clause);
 		this.nProps = nProps;
 	}
 
 	public SatFormula() {
-		clauses = new ArrayList<int[]>();
+		literals = new int[INITIAL_LITERAL_CAPACITY];
+		offsets = new int[INITIAL_CLAUSE_CAPACITY + 1];
+		nClauses = 0;
 		nProps = 0;
 	}
 
+	public SatFormula(SatFormula copyMe) {
+		literals = Arrays.copyOf(copyMe.literals, copyMe.offsets[copyMe.nClauses]);
+		offsets = Arrays.copyOf(copyMe.offsets, copyMe.nClauses + 1);
+		nClauses = copyMe.nClauses;
+		nProps = copyMe.nProps;
+		comment = copyMe.comment;
+	}
+
 	public void addClause(List<Integer> clause) {
-		int[] arr = new int[clause.size()];
-		int i = 0;
-		for (Integer s : clause)
-			arr[i++] = s;
-		
-		setHighestPropNumber(arr);
-		clauses.add(arr);
+		int start = reserveClause(clause.size());
+		for (Integer s : clause) {
+			checkProp(s);
+			literals[start++] = s;
+		}
+		closeClause(clause.size());
 	}
 
 	public void addClause(int ... clause) {
 		setHighestPropNumber(clause);
-		clauses.add(Arrays.copyOf(clause, clause.length));
+		appendClause(clause);
 	}
 
 	protected void setHighestPropNumber(int[] clause) {
-		for (int p : clause) {
-			p = Math.abs(p);
-			if (p > nProps)
-				nProps = p;
-			if (p == 0)
-				throw new IllegalArgumentException("Invalid prop: " + Integer.toString(p));
-		}
+		for (int p : clause)
+			checkProp(p);
+	}
+
+	protected void checkProp(int p) {
+		if (p == 0)
+			throw new IllegalArgumentException("Invalid prop: " + Integer.toString(p));
+		p = Math.abs(p);
+		if (p > nProps)
+			nProps = p;
+	}
+
+	/**
+	 * Copies the clause into the arena as-is, without checking its propositions.
+	 */
+	protected void appendClause(int[] clause) {
+		int start = reserveClause(clause.length);
+		System.arraycopy(clause, 0, literals, start, clause.length);
+		closeClause(clause.length);
+	}
+
+	/**
+	 * Makes room for a clause of the given length at the end of the arena and
+	 * returns the index of its first literal. The caller must fill the reserved
+	 * slots and then call {@link #closeClause(int)}.
+	 */
+	protected int reserveClause(int length) {
+		if (nClauses + 2 > offsets.length)
+			offsets = Arrays.copyOf(offsets, grow(offsets.length, nClauses + 2));
+
+		int start = offsets[nClauses];
+		if ((long) start + length > literals.length)
+			literals = Arrays.copyOf(literals, grow(literals.length, (long) start + length));
+		return start;
+	}
+
+	protected void closeClause(int length) {
+		offsets[nClauses + 1] = offsets[nClauses] + length;
+		nClauses++;
+	}
+
+	private static int grow(int current, long required) {
+		if (required > MAX_CAPACITY)
+			throw new IllegalStateException("SAT formula too large: " + required + " entries");
+		long capacity = Math.max(required, current + (current >> 1));
+		return (int) Math.min(capacity, MAX_CAPACITY);
+	}
+
+	/**
+	 * Shrinks the arena to the clauses it holds, e.g., before serialising.
+	 */
+	public void trimToSize() {
+		literals = Arrays.copyOf(literals, offsets[nClauses]);
+		offsets = Arrays.copyOf(offsets, nClauses + 1);
 	}
 
 	public int getNumProps() {
@@ -162,7 +226,260 @@ public class SatFormula implements Iterable<int[]>, Serializable {
 	}
 
 	public int getNumClauses() {
-		return clauses.size();
+		return nClauses;
+	}
+
+	public long getNumLiterals() {
+		return offsets[nClauses];
+	}
+
+	public int getClauseLength(int i) {
+		return offsets[i+1] - offsets[i];
+	}
+
+	public int getLiteral(int i, int k) {
+		return literals[offsets[i] + k];
+	}
+
+	/**
+	 * Index in the arena of the first proposition of clause i, skipping any 
+	 * non-literal prefix such as a clause weight.
+	 */
+	protected int getBodyStart(int i) {
+		return offsets[i];
+	}
+
+	public int[] getClause(int i) {
+		if (i < 0 || i >= nClauses)
+			throw new IndexOutOfBoundsException("Clause " + i + ", size " + nClauses);
+		return Arrays.copyOfRange(literals, offsets[i], offsets[i+1]);
+	}
+
+	/**
+	 * Hard clauses. Soft clauses are only merged or removed when doing so
+	 * does not change the cost of any assignment.
+	 */
+	protected boolean isHardClause(int i) {
+		return true;
+	}
+
+	/**
+	 * Adds the weight of soft clause from to soft clause into, if possible.
+	 */
+	protected boolean mergeSoftClauses(int into, int from) {
+		return false;
+	}
+
+	/**
+	 * Simplifies the formula in place, without renumbering propositions:
+	 * literals in each clause are sorted by proposition and duplicates
+	 * removed, then tautologies, clauses subsumed by hard unit or binary
+	 * clauses, and duplicate clauses are removed. Soft clauses with the same
+	 * literals are merged by summing their weights. Returns the number of
+	 * clauses removed.
+	 */
+	public int simplify() {
+		int before = nClauses;
+		BitSet remove = new BitSet(nClauses);
+
+		// canonical literal order, tautologies
+		int write = 0;
+		int[] clause = new int[16];
+		for (int c = 0; c < nClauses; c++) {
+			int from = offsets[c];
+			int bodyStart = getBodyStart(c);
+			int to = offsets[c+1];
+			offsets[c] = write;
+
+			if (to - bodyStart > clause.length)
+				clause = new int[to - bodyStart];
+			int length = canonicalise(literals, bodyStart, to, clause);
+
+			for (int i = from; i < bodyStart; i++) // weight
+				literals[write++] = literals[i];
+			if (length < 0) {
+				remove.set(c);
+				length = 0;
+			}
+			System.arraycopy(clause, 0, literals, write, length);
+			write+=length;
+		}
+		offsets[nClauses] = write;
+
+		// hard units and binaries
+		BitSet units = new BitSet();
+		BitSet binaryLits = new BitSet();
+		LongIntHashMap binaries = new LongIntHashMap();
+		for (int c = 0; c < nClauses; c++) {
+			if (remove.get(c) || !isHardClause(c))
+				continue;
+			int b = getBodyStart(c);
+			int length = offsets[c+1] - b;
+			if (length == 1)
+				units.set(literalIndex(literals[b]));
+			else if (length == 2) {
+				binaries.put(pairKey(literals[b], literals[b+1]), c);
+				binaryLits.set(literalIndex(literals[b]));
+			}
+		}
+
+		// subsumed by a unit or binary other than the clause itself
+		for (int c = 0; c < nClauses; c++) {
+			if (remove.get(c))
+				continue;
+			int b = getBodyStart(c);
+			int e = offsets[c+1];
+			boolean hard = isHardClause(c);
+			boolean subsumed = false;
+			for (int i = b; i < e && !subsumed; i++) {
+				if (units.get(literalIndex(literals[i])) && (e - b > 1 || !hard))
+					subsumed = true;
+				if (!binaryLits.get(literalIndex(literals[i])))
+					continue;
+				for (int j = i+1; j < e && !subsumed; j++) {
+					if (binaries.containsKey(pairKey(literals[i], literals[j])) && (e - b > 2 || !hard))
+						subsumed = true;
+				}
+			}
+			if (subsumed)
+				remove.set(c);
+		}
+
+		// duplicates. Hard clauses are indexed first, so that any soft copy of a hard clause is removed
+		int[] hardTable = new int[tableSize(nClauses)];
+		int[] softTable = new int[hardTable.length];
+		Arrays.fill(hardTable, -1);
+		Arrays.fill(softTable, -1);
+		for (int c = 0; c < nClauses; c++) {
+			if (!remove.get(c) && isHardClause(c) && findOrInsert(hardTable, c, true) != c)
+				remove.set(c);
+		}
+		for (int c = 0; c < nClauses; c++) {
+			if (remove.get(c) || isHardClause(c))
+				continue;
+			if (findOrInsert(hardTable, c, false) >= 0)
+				remove.set(c);
+			else {
+				int first = findOrInsert(softTable, c, true);
+				if (first != c && mergeSoftClauses(first, c))
+					remove.set(c);
+			}
+		}
+
+		// compact
+		write = 0;
+		int n = 0;
+		for (int c = 0; c < nClauses; c++) {
+			int from = offsets[c];
+			int to = offsets[c+1];
+			if (remove.get(c))
+				continue;
+			System.arraycopy(literals, from, literals, write, to - from);
+			offsets[n] = write;
+			write+=to - from;
+			n++;
+		}
+		offsets[n] = write;
+		nClauses = n;
+
+		return before - nClauses;
+	}
+
+	/**
+	 * Copies literals[from..to) into out, sorted by proposition and without
+	 * duplicates, and returns the length, or -1 if the clause is a tautology.
+	 */
+	private static int canonicalise(int[] literals, int from, int to, int[] out) {
+		int length = to - from;
+		if (length <= 32) { // insertion sort
+			for (int i = 0; i < length; i++) {
+				int lit = literals[from + i];
+				int j = i - 1;
+				while (j >= 0 && compareLiterals(out[j], lit) > 0) {
+					out[j+1] = out[j];
+					j--;
+				}
+				out[j+1] = lit;
+			}
+		} else {
+			long[] keys = new long[length];
+			for (int i = 0; i < length; i++) {
+				int lit = literals[from + i];
+				keys[i] = ((long) Math.abs(lit) << 1) | (lit < 0 ? 0 : 1);
+			}
+			Arrays.sort(keys);
+			for (int i = 0; i < length; i++)
+				out[i] = (keys[i] & 1) == 0 ? (int) -(keys[i] >> 1) : (int) (keys[i] >> 1);
+		}
+
+		int n = 0;
+		for (int i = 0; i < length; i++) {
+			if (n > 0 && out[n-1] == out[i])
+				continue;
+			if (n > 0 && out[n-1] == -out[i])
+				return -1;
+			out[n++] = out[i];
+		}
+		return n;
+	}
+
+	private static int compareLiterals(int l1, int l2) {
+		int c = Integer.compare(Math.abs(l1), Math.abs(l2));
+		return c != 0 ? c : Integer.compare(l1, l2);
+	}
+
+	private static int literalIndex(int lit) {
+		return lit > 0 ? 2 * lit : -2 * lit + 1;
+	}
+
+	private static long pairKey(int l1, int l2) {
+		return ((long) literalIndex(l1) << 32) | literalIndex(l2);
+	}
+
+	private static int tableSize(int n) {
+		int size = 16;
+		while (size < 2L * n && size < (1 << 30))
+			size <<= 1;
+		return size;
+	}
+
+	/**
+	 * Returns the first clause in the table with the same literals as clause c,
+	 * inserting c if there is none and insert is true (then returning c), or
+	 * returning -1 otherwise.
+	 */
+	private int findOrInsert(int[] table, int c, boolean insert) {
+		int mask = table.length - 1;
+		int i = hashBody(c) & mask;
+		while (table[i] >= 0) {
+			if (sameBody(table[i], c))
+				return table[i];
+			i = (i + 1) & mask;
+		}
+		if (!insert)
+			return -1;
+		table[i] = c;
+		return c;
+	}
+
+	private int hashBody(int c) {
+		int h = 1;
+		for (int i = getBodyStart(c); i < offsets[c+1]; i++)
+			h = 31 * h + literals[i];
+		return h ^ (h >>> 16);
+	}
+
+	private boolean sameBody(int c1, int c2) {
+		int b1 = getBodyStart(c1);
+		int b2 = getBodyStart(c2);
+		int length = offsets[c1+1] - b1;
+		if (length != offsets[c2+1] - b2)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (literals[b1 + i] != literals[b2 + i])
+				return false;
+		}
+		return true;
 	}
 
 	public String getComment() {
@@ -174,62 +491,35 @@ public class SatFormula implements Iterable<int[]>, Serializable {
 	}
 
 	protected String formatDescription() {
-		return "p cnf " + nProps + " " + clauses.size();
+		return "p cnf " + nProps + " " + nClauses;
 	}
 
 	@Override
 	public Iterator<int[]> iterator() {
-		return clauses.iterator();
+		return getClauses().iterator();
 	}
 
+	/**
+	 * A read-only view of the clauses. Each access copies the clause out of the 
+	 * arena, so bulk consumers should prefer {@link #getClauseLength(int)} and
+	 * {@link #getLiteral(int, int)}.
+	 */
 	public List<int[]> getClauses() {
-		return clauses;
+		return new AbstractList<int[]>() {
+			@Override
+			public int[] get(int index) {
+				return getClause(index);
+			}
+
+			@Override
+			public int size() {
+				return nClauses;
+			}
+		};
 	}
 
 	public void writeToFileRandomAccess(File file) throws IOException {
-
-		if (file.exists())
-			file.delete();
-		
-		byte[] sp = " ".getBytes();
-		byte[] end = "0\n".getBytes();
-		
-		long spSize = sp.length;
-		long endSize = end.length;
-		long buf = 0;
-		if (comment != null) {
-			for (String cline : comment.split("\n"))
-				buf += ("c " + cline + "\n").getBytes().length;
-		}
-		buf+=(formatDescription()+"\n").getBytes().length;
-		
-		for (int[] clause : clauses) {
-			for (int i = 0; i < clause.length; i++){
-				buf += Integer.toString(clause[i]).getBytes().length;
-				buf += spSize;
-			}
-			buf+=endSize;
-		}		
-		
-		RandomAccessFile raf = new RandomAccessFile(file.getAbsolutePath(), "rw");
-		FileChannel rwChannel = raf.getChannel();
-		ByteBuffer wrBuf = rwChannel.map(FileChannel.MapMode.READ_WRITE, 0, buf);
-		
-		if (comment != null) {
-			for (String cline : comment.split("\n"))
-				wrBuf.put(("c " + cline + "\n").getBytes());
-		}
-		wrBuf.put((formatDescription()+"\n").getBytes());
-		
-		for (int[] clause : clauses) {
-			for (int i = 0; i < clause.length; i++){
-				wrBuf.put(Integer.toString(clause[i]).getBytes());
-				wrBuf.put(sp);
-			}
-			wrBuf.put(end);
-		}
-		rwChannel.close();
-		raf.close();
+		writeToFile(file);
 	}
 	
 	public void writeToFile(File file) throws IOException {
@@ -237,61 +527,44 @@ public class SatFormula implements Iterable<int[]>, Serializable {
 		if (file.exists())
 			file.delete();
 		
-		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file)));
-		 	
-		if (comment != null) {
-			for (String cline : comment.split("\n"))
-				bw.write("c " + cline + "\n");
-		}
-		bw.write(formatDescription()+"\n");
-		
-		StringBuilder sb = new StringBuilder();
-		int c = 0;
-		for (int[] clause : clauses) {	
-			for (int i = 0; i < clause.length; i++){
-				//bw.write(Integer.toString(clause[i]));
-				//bw.write(" ");
-				sb.append(Integer.toString(clause[i]) + " ");
-			}
-			sb.append("0\n");
-			//bw.write("0\n");
-			if (c % 1000 == 0) {			
-				bw.write(sb.toString());
-				sb = new StringBuilder();
-			}
-			c++;
+		DimacsWriter writer = new DimacsWriter(new FileOutputStream(file));
+		try {
+			write(writer);
+		} finally {
+			writer.close();
 		}
-		
-		bw.write(sb.toString());
-		bw.close();
 	}
 
 	public void writeToStream(OutputStream out) throws IOException {
-		byte[] sp = " ".getBytes();
-		byte[] end = "0\n".getBytes();
-		
+		DimacsWriter writer = new DimacsWriter(out);
+		write(writer);
+		writer.flush();
+	}
+	
+	public void write(DimacsWriter writer) throws IOException {
 		if (comment != null) {
 			for (String cline : comment.split("\n"))
-				out.write(("c " + cline + "\n").getBytes());
-		}
-		out.write((formatDescription()+"\n").getBytes());
-		out.flush();
-		for (int[] clause : clauses) {
-			for (int i = 0; i < clause.length; i++) {
-				out.write(Integer.toString(clause[i]).getBytes());
-				out.write(sp);
-			}
-			out.write(end);
-			out.flush();
+				writer.writeLine("c " + cline);
 		}
+		writeHeader(writer);
+		for (int c = 0; c < nClauses; c++)
+			writeClause(writer, c);
+	}
+	
+	protected void writeHeader(DimacsWriter writer) throws IOException {
+		writer.writeLine(formatDescription());
+	}
+	
+	protected void writeClause(DimacsWriter writer, int c) throws IOException {
+		writer.writeClause(literals, offsets[c], offsets[c+1]);
 	}
 	
 	public UndirectedGraph<Integer> getPrimalGraph() {
 		UndirectedGraph<Integer> primalGraph = new UndirectedGraph<Integer>();
-		for (int[] clause : clauses) {
-			for (int i = 0; i < clause.length; i++) {
-				for (int j = i+1; j < clause.length; j++) {
-					primalGraph.addEdge(clause[i], clause[j]);
+		for (int c = 0; c < nClauses; c++) {
+			for (int i = getBodyStart(c); i < offsets[c+1]; i++) {
+				for (int j = i+1; j < offsets[c+1]; j++) {
+					primalGraph.addEdge(literals[i], literals[j]);
 				}
 			}
 		}
@@ -301,9 +574,9 @@ public class SatFormula implements Iterable<int[]>, Serializable {
 	public UndirectedGraph<Integer> getIncidenceGraph() {
 		UndirectedGraph<Integer> incGraph = new UndirectedGraph<Integer>();
 		int cnum = nProps+1;
-		for (int[] clause : clauses) {
-			for (int i = 0; i < clause.length; i++) {
-				incGraph.addEdge(clause[i], cnum);
+		for (int c = 0; c < nClauses; c++) {
+			for (int i = getBodyStart(c); i < offsets[c+1]; i++) {
+				incGraph.addEdge(literals[i], cnum);
 			}
 			cnum++;
 		}
@@ -313,9 +586,9 @@ public class SatFormula implements Iterable<int[]>, Serializable {
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		sb.append(formatDescription());
-		for (int[] clause : clauses) {
-			for (int prop : clause) {
-				sb.append(prop);
+		for (int c = 0; c < nClauses; c++) {
+			for (int i = offsets[c]; i < offsets[c+1]; i++) {
+				sb.append(literals[i]);
 				sb.append(" ");
 			}		
 			sb.append("0\n");
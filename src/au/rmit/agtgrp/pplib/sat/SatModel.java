@@ -0,0 +1,250 @@
+package au.rmit.agtgrp.pplib.sat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A truth assignment read from SAT/MaxSAT solver output. Only propositions
+ * assigned true are stored.
+ */
+public class SatModel {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	public static SatModel load(File file) throws IOException {
+		return load(file, false);
+	}
+
+	public static SatModel load(File file, boolean binary) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return parse(in, binary);
+		} finally {
+			in.close();
+		}
+	}
+
+	public static SatModel parse(InputStream in) throws IOException {
+		return parse(in, false);
+	}
+
+	/**
+	 * Scans solver output once and returns the last model found, or null if
+	 * there is none. A model is a run of consecutive "v " lines, either in
+	 * decimal literal form ("v 1 -2 3 0"), or, if binary is true, as a binary
+	 * string ("v 101") where the i-th character is the value of proposition i,
+	 * as printed by MaxSAT Evaluation 2022+ solvers. All other lines, and v
+	 * lines which are not in the expected form, are skipped.
+	 */
+	public static SatModel parse(InputStream in, boolean binary) throws IOException {
+		ModelParser parser = new ModelParser(binary);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			for (int i = 0; i < n; i++)
+				parser.accept(buffer[i]);
+		}
+		parser.accept((byte) '\n');
+		return parser.last;
+	}
+
+	public static SatModel parse(String line) {
+		return parse(line, false);
+	}
+
+	public static SatModel parse(String line, boolean binary) {
+		ModelParser parser = new ModelParser(binary);
+		for (int i = 0; i < line.length(); i++)
+			parser.accept((byte) line.charAt(i));
+		parser.accept((byte) '\n');
+		return parser.last;
+	}
+
+	public static SatModel fromLiterals(int[] lits) {
+		SatModel model = new SatModel();
+		for (int lit : lits)
+			model.set(Math.abs(lit), lit > 0);
+		return model;
+	}
+
+	private final BitSet trueProps;
+	private int nProps;
+
+	public SatModel() {
+		trueProps = new BitSet();
+		nProps = 0;
+	}
+
+	public void set(int prop, boolean value) {
+		if (prop <= 0)
+			throw new IllegalArgumentException("Invalid prop: " + prop);
+		if (value)
+			trueProps.set(prop);
+		else
+			trueProps.clear(prop);
+		if (prop > nProps)
+			nProps = prop;
+	}
+
+	public boolean isTrue(int prop) {
+		return trueProps.get(prop);
+	}
+
+	public int getNumProps() {
+		return nProps;
+	}
+
+	/**
+	 * Returns the smallest true proposition >= from, or -1 if there is none.
+	 */
+	public int nextTrueProp(int from) {
+		return trueProps.nextSetBit(Math.max(from, 1));
+	}
+
+	/**
+	 * The model as a complete list of literals 1..n, each signed by its value.
+	 */
+	public int[] toLiterals() {
+		int[] lits = new int[nProps];
+		for (int p = 1; p <= nProps; p++)
+			lits[p-1] = trueProps.get(p) ? p : -p;
+		return lits;
+	}
+
+	private static class ModelParser {
+
+		private enum LineState {
+			START, AFTER_V, MODEL, SKIP
+		}
+
+		private final boolean binary;
+
+		private SatModel last = null;
+		private SatModel current = null;    // model being read from the current run of v lines
+		private LineState state = LineState.START;
+		private boolean prevLineWasModel = false;
+
+		// the current line, applied to the model once the whole line has been read
+		private int[] lits = new int[16];
+		private int nLits = 0;
+		private BitSet bits = new BitSet();
+		private int nBits = 0;
+
+		// the token being read
+		private boolean inToken = false;
+		private int nTokens = 0;
+		private boolean negative = false;
+		private boolean hasDigits = false;
+		private long value = 0;
+
+		private ModelParser(boolean binary) {
+			this.binary = binary;
+		}
+
+		void accept(byte b) {
+			if (b == '\n') {
+				endLine();
+				return;
+			}
+
+			switch (state) {
+			case START:
+				state = b == 'v' ? LineState.AFTER_V : LineState.SKIP;
+				return;
+			case AFTER_V:
+				if (b == ' ' || b == '\t') {
+					state = LineState.MODEL;
+					nLits = 0;
+					bits.clear();
+					nBits = 0;
+					nTokens = 0;
+					inToken = false;
+				} else if (b != '\r') {
+					state = LineState.SKIP;
+				}
+				return;
+			case SKIP:
+				return;
+			case MODEL:
+				break;
+			}
+
+			if (b == ' ' || b == '\t' || b == '\r') {
+				if (inToken && !endToken())
+					state = LineState.SKIP;
+				return;
+			}
+
+			if (!inToken) {
+				inToken = true;
+				nTokens++;
+				negative = false;
+				hasDigits = false;
+				value = 0;
+				if (binary && nTokens > 1) { // a binary model is a single string
+					state = LineState.SKIP;
+					return;
+				}
+			}
+
+			if (binary) {
+				if (b == '1')
+					bits.set(nBits);
+				else if (b != '0')
+					state = LineState.SKIP;
+				nBits++;
+			} else if (b == '-' && !negative && !hasDigits) {
+				negative = true;
+			} else if (b >= '0' && b <= '9') {
+				hasDigits = true;
+				value = value * 10 + (b - '0');
+				if (value > Integer.MAX_VALUE)
+					state = LineState.SKIP;
+			} else {
+				state = LineState.SKIP;
+			}
+		}
+
+		// returns false if the token is not a literal
+		private boolean endToken() {
+			inToken = false;
+			if (binary)
+				return true;
+			if (!hasDigits)
+				return false;
+			if (value != 0) { // skip the terminating zero
+				if (nLits == lits.length)
+					lits = Arrays.copyOf(lits, nLits * 2);
+				lits[nLits++] = negative ? (int) -value : (int) value;
+			}
+			return true;
+		}
+
+		private void endLine() {
+			boolean model = state == LineState.MODEL && (!inToken || endToken());
+			if (model) {
+				if (!prevLineWasModel)
+					current = new SatModel();
+				if (binary) {
+					// consecutive binary lines continue the same string
+					int offset = current.nProps;
+					for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+						current.trueProps.set(offset + i + 1);
+					current.nProps = offset + nBits;
+				} else {
+					for (int i = 0; i < nLits; i++)
+						current.set(Math.abs(lits[i]), lits[i] > 0);
+				}
+				last = current;
+			}
+			prevLineWasModel = model;
+			state = LineState.START;
+			inToken = false;
+		}
+	}
+
+}
@@ -1,15 +1,20 @@
 package au.rmit.agtgrp.pplib.sat;
 
+import java.io.IOException;
 import java.util.List;
 
-import au.rmit.agtgrp.pplib.utils.collections.graph.UndirectedGraph;
-
 public class WeightedSatFormula extends SatFormula {
 	
 	private static final long serialVersionUID = 1L;
 	
+	public enum WcnfFormat {
+		LEGACY, // "p wcnf" header, hard clauses carry the top weight
+		MODERN  // MaxSAT Evaluation 2022+: no header, hard clauses prefixed with "h"
+	}
+	
 	private final int hardClauseWeight;
-	private long weightsSum;
+	private long weightsSum; // soft clauses only
+	private WcnfFormat format = WcnfFormat.LEGACY;
 
 	public WeightedSatFormula(List<int[]> clauses, int nProps, int hardClauseWeight) {
 		super(clauses, nProps);
@@ -23,10 +28,31 @@ public class WeightedSatFormula extends SatFormula {
 		weightsSum = 0;
 	}
 	
+	public WeightedSatFormula(WeightedSatFormula copyMe) {
+		super(copyMe);
+		this.hardClauseWeight = copyMe.hardClauseWeight;
+		this.weightsSum = copyMe.weightsSum;
+		this.format = copyMe.format;
+	}
+	
 	public int getHardClauseWeight() {
 		return hardClauseWeight;
 	}
 	
+	public WcnfFormat getFormat() {
+		return format;
+	}
+	
+	public void setFormat(WcnfFormat format) {
+		this.format = format;
+	}
+	
+	public long getSoftWeightsSum() {
+		if (weightsSum == -1)
+			initWeightSum();
+		return weightsSum;
+	}
+	
 	@Override
 	public void addClause(List<Integer> clause) {
 		addHardClause(clause);
@@ -47,36 +73,73 @@ public class WeightedSatFormula extends SatFormula {
 
 	
 	public void addWeightedClause(int weight, List<Integer> clause) {
-		int[] combined = new int[clause.size() + 1];
-		combined[0] = weight;
-		int i = 1;
 		for (int p : clause)
-			combined[i++] = p;
-		
-		super.addClause(combined);
+			checkProp(p);
 		setWeightSum(weight);
+		
+		int start = reserveClause(clause.size() + 1);
+		literals[start++] = weight;
+		for (int p : clause)
+			literals[start++] = p;
+		closeClause(clause.size() + 1);
 	}
 	
 	public void addWeightedClause(int weight, int ... clause) {
-		int[] combined = new int[clause.length + 1];
-		combined[0] = weight;
-		for (int i = 0; i < clause.length; i++)
-			combined[i+1] = clause[i];
-		
-		super.addClause(combined);
+		for (int p : clause)
+			checkProp(p);
 		setWeightSum(weight);
+		
+		int start = reserveClause(clause.length + 1);
+		literals[start] = weight;
+		System.arraycopy(clause, 0, literals, start + 1, clause.length);
+		closeClause(clause.length + 1);
 	}
 	
-	private void setWeightSum(int weight) {
-		if (weightsSum == -1) {	
-			weightsSum = 0;
-			for (int[] clause : clauses) {
-				weightsSum+=clause[0];
-			}
+	public int getWeight(int i) {
+		return literals[offsets[i]];
+	}
+	
+	public boolean isHard(int i) {
+		return getWeight(i) >= hardClauseWeight;
+	}
+	
+	@Override
+	protected boolean isHardClause(int i) {
+		return isHard(i);
+	}
+
+	@Override
+	protected boolean mergeSoftClauses(int into, int from) {
+		long weight = (long) getWeight(into) + getWeight(from);
+		if (weight >= hardClauseWeight)
+			return false;
+		literals[offsets[into]] = (int) weight;
+		return true;
+	}
+
+	@Override
+	public int simplify() {
+		int removed = super.simplify();
+		weightsSum = -1; // soft clauses subsumed by hard clauses are removed
+		return removed;
+	}
+
+	private void initWeightSum() {
+		weightsSum = 0;
+		for (int c = 0; c < nClauses; c++) {
+			if (!isHard(c))
+				weightsSum+=getWeight(c);
 		}
+	}
+	
+	private void setWeightSum(int weight) {
+		if (weightsSum == -1)
+			initWeightSum();
 		
 		if (weight <= 0)
 			throw new IllegalArgumentException("Weights must > 0");
+		if (weight >= hardClauseWeight) // hard clauses do not contribute to the sum
+			return;
 		if (weightsSum + weight < 0) // wrap around
 			throw new IllegalArgumentException("Sum of weights (" + weightsSum +") > " + Long.MAX_VALUE);
 
@@ -85,44 +148,39 @@ public class WeightedSatFormula extends SatFormula {
 	
 	@Override
 	protected void setHighestPropNumber(int[] clause) {
-		for (int i = 1; i < clause.length; i++) {
-			int p = Math.abs(clause[i]);
-			if (p > nProps)
-				nProps = p;
-			if (p == 0)
-				throw new IllegalArgumentException("Invalid prop: " + Integer.toString(p));
-		}
+		for (int i = 1; i < clause.length; i++)
+			checkProp(clause[i]);
+	}
+	
+	@Override
+	protected int getBodyStart(int i) {
+		return offsets[i] + 1;
 	}
 	
 	@Override
 	protected String formatDescription() {
-		return "p wcnf " + nProps + " " + clauses.size() + " " + hardClauseWeight;
+		return "p wcnf " + nProps + " " + nClauses + " " + hardClauseWeight;
 	}
 	
 	@Override
-	public UndirectedGraph<Integer> getPrimalGraph() {
-		UndirectedGraph<Integer> primalGraph = new UndirectedGraph<Integer>();
-		for (int[] clause : clauses) {
-			for (int i = 1; i < clause.length; i++) {
-				for (int j = i+1; j < clause.length; j++) {
-					primalGraph.addEdge(clause[i], clause[j]);
-				}
-			}
-		}
-		return primalGraph;
+	protected void writeHeader(DimacsWriter writer) throws IOException {
+		if (format == WcnfFormat.LEGACY)
+			super.writeHeader(writer);
 	}
 	
 	@Override
-	public UndirectedGraph<Integer> getIncidenceGraph() {
-		UndirectedGraph<Integer> incGraph = new UndirectedGraph<Integer>();
-		int cnum = nProps+1;
-		for (int[] clause : clauses) {
-			for (int i = 1; i < clause.length; i++) {
-				incGraph.addEdge(clause[i], cnum);
-			}
-			cnum++;
+	protected void writeClause(DimacsWriter writer, int c) throws IOException {
+		if (format == WcnfFormat.LEGACY) {
+			super.writeClause(writer, c);
+			return;
 		}
-		return incGraph;
+		
+		if (isHard(c))
+			writer.writeByte('h');
+		else
+			writer.writeInt(getWeight(c));
+		writer.writeByte(' ');
+		writer.writeClause(literals, getBodyStart(c), offsets[c+1]);
 	}
 
 }
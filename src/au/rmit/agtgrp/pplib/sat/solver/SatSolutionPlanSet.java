@@ -29,6 +29,9 @@ public class SatSolutionPlanSet implements PlanSet {
 	public int getPlanCount() {
 		return satSolutions.getSolutionCount();
 	}
+
+	@Override
+	public void close() { }
 		
 	private class SatSolutionPlanSetIterator implements Iterator<Plan> {
 
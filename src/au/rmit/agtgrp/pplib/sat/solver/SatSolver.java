@@ -5,10 +5,20 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import au.rmit.agtgrp.pplib.sat.SatFormula;
+import au.rmit.agtgrp.pplib.sat.SatModel;
 import au.rmit.agtgrp.pplib.sat.WeightedSatFormula;
+import au.rmit.agtgrp.pplib.sat.WeightedSatFormula.WcnfFormat;
+import au.rmit.agtgrp.pplib.utils.ScratchDir;
 
 public class SatSolver {
 
@@ -16,10 +26,51 @@ public class SatSolver {
 		SATISFIABLE, UNSATISFIABLE, OPTIMAL, TIMEOUT, ERROR
 	}
 	
+	/** Default parent of the per-invocation scratch directories. */
 	public static File TEMP_DIR = new File("temp");
 	
+	/** Replaced by the time limit in seconds in MaxSAT solver commands. */
+	public static final String SECONDS = "{seconds}";
+	public static final String DEFAULT_MAXSAT_COMMAND = "loandra -cpu-lim=" + SECONDS + " -printM";
+	
 	private SatSolutionSet solutionSet;
 	private SatSolverResult result;
+	private List<String> maxSatPortfolio = Collections.singletonList(DEFAULT_MAXSAT_COMMAND);
+	private String winningCommand;
+	private File tempDir = TEMP_DIR;
+	
+	/**
+	 * Sets the directory under which each solve creates, and then deletes, its
+	 * own scratch directory.
+	 */
+	public void setTempDir(File tempDir) {
+		this.tempDir = tempDir;
+	}
+	
+	public File getTempDir() {
+		return tempDir;
+	}
+	
+	/**
+	 * Sets the MaxSAT solver commands to run on each weighted formula. With more
+	 * than one command they are run in parallel and the first to finish wins.
+	 */
+	public void setMaxSatPortfolio(List<String> commands) {
+		if (commands == null || commands.isEmpty())
+			throw new IllegalArgumentException("Portfolio must contain at least one command");
+		maxSatPortfolio = new ArrayList<String>(commands);
+	}
+	
+	public List<String> getMaxSatPortfolio() {
+		return Collections.unmodifiableList(maxSatPortfolio);
+	}
+	
+	/**
+	 * The portfolio command whose result was returned by the last weighted solve.
+	 */
+	public String getWinningCommand() {
+		return winningCommand;
+	}
 
 	public SatSolutionSet getSolutions() {
 		return solutionSet;
@@ -49,14 +100,12 @@ public class SatSolver {
 	
 	public void solveUnweighted(SatFormula sat, int n, long timeout, boolean verbose) {
 		
-		if (!TEMP_DIR.exists())
-			TEMP_DIR.mkdirs();
-		
+		ScratchDir scratch = ScratchDir.create(tempDir, "sat-");
 		try {
-			File cnfFile = new File(TEMP_DIR, "maple-temp.cnf");
+			File cnfFile = scratch.getFile("maple-temp.cnf");
 			sat.writeToFileRandomAccess(cnfFile);
 
-			File solnsFile = new File(TEMP_DIR, "maple-temp-solns.cnf");
+			File solnsFile = scratch.getFile("maple-temp-solns.cnf");
 
 			timeout = timeout/1000; // to seconds
 			if (timeout > Integer.MAX_VALUE || timeout < 1)
@@ -86,6 +135,9 @@ public class SatSolver {
 		catch (IOException e) {
 			throw new RuntimeException(e);
 		}
+		finally {
+			scratch.close();
+		}
 	}
 	
 	public void solveUnweighted(SatFormula sat, long timeout, boolean verbose) {
@@ -132,45 +184,203 @@ public class SatSolver {
 	
 
 	public void solveWeighted(WeightedSatFormula sat, long timeout, boolean verbose) {
+		
+		solutionSet = null;
+		result = null;
+		winningCommand = null;
+		
+		int seconds = (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeout/1000));
+		
+		if (maxSatPortfolio.size() > 1) {
+			solvePortfolio(sat, seconds, verbose);
+			return;
+		}
+		
+		MaxSatRun run = new MaxSatRun(maxSatPortfolio.get(0), seconds, null, tempDir);
+		try {
+			run.start();
+			run.write(sat);
+			run.read(sat, verbose);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		if (run.result == SatSolverResult.ERROR)
+			throw new RuntimeException(run.output.toString());
+		
+		setWinner(run);
+	}
+	
+	/**
+	 * Runs every command in the portfolio on the formula at once. The first run
+	 * to prove optimality or unsatisfiability wins and the others are killed.
+	 * Otherwise the run whose best model has the lowest cost wins.
+	 */
+	private void solvePortfolio(final WeightedSatFormula sat, int seconds, final boolean verbose) {
+		
+		List<MaxSatRun> runs = new ArrayList<MaxSatRun>();
+		for (int i = 0; i < maxSatPortfolio.size(); i++)
+			runs.add(new MaxSatRun(maxSatPortfolio.get(i), seconds, "[" + i + "] ", tempDir));
+		
+		ExecutorService ex = Executors.newFixedThreadPool(runs.size());
+		CompletionService<MaxSatRun> cs = new ExecutorCompletionService<MaxSatRun>(ex);
+		int nStarted = 0;
 		try {
-			int seconds = (int) (timeout/1000);
+			for (final MaxSatRun run : runs) {
+				try {
+					run.start();
+				} catch (IOException e) {
+					System.err.println("Could not start " + run.command + ": " + e.getMessage());
+					continue;
+				}
+				cs.submit(new Callable<MaxSatRun>() {
+					@Override
+					public MaxSatRun call() throws IOException {
+						run.read(sat, verbose);
+						return run;
+					}
+				});
+				nStarted++;
+			}
 			
-			ProcessBuilder pb = new ProcessBuilder(
-					"loandra", 
-					"-cpu-lim=" + seconds, 
-					"-printM"
-				//	"-algorithm=3" // uses too much memory!
-					);
-			Process process = pb.start();
-			pb.redirectErrorStream(true);
+			// the solvers read all input before searching, so writing in turn is fine
+			for (MaxSatRun run : runs) {
+				try {
+					if (run.process != null)
+						run.write(sat);
+				} catch (IOException e) {
+					run.process.destroyForcibly(); // its reader will report the error
+				}
+			}
 			
+			MaxSatRun best = null;
+			MaxSatRun firstError = null;
+			for (int i = 0; i < nStarted; i++) {
+				MaxSatRun run;
+				try {
+					run = cs.take().get();
+				} catch (ExecutionException e) {
+					continue;
+				}
+				
+				if (run.result == SatSolverResult.OPTIMAL || run.result == SatSolverResult.UNSATISFIABLE) {
+					best = run;
+					break;
+				}
+				if (!run.solns.isEmpty() && run.result != SatSolverResult.ERROR) {
+					if (best == null || best.solns.isEmpty() || run.cost < best.cost)
+						best = run;
+				}
+				else if (run.result == SatSolverResult.ERROR || run.result == null) {
+					if (firstError == null)
+						firstError = run;
+				}
+				else if (best == null) {
+					best = run;
+				}
+			}
+			
+			if (best == null) {
+				if (firstError != null)
+					throw new RuntimeException(firstError.output.toString());
+				throw new RuntimeException("No solver in the portfolio returned a result");
+			}
+			
+			setWinner(best);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		finally {
+			for (MaxSatRun run : runs) {
+				if (run.process != null)
+					run.process.destroyForcibly();
+			}
+			ex.shutdownNow();
+		}
+	}
+	
+	private void setWinner(MaxSatRun run) {
+		result = run.result;
+		solutionSet = new InMemorySatSolutionSet(run.solns);
+		winningCommand = run.command;
+	}
+	
+	/**
+	 * One solver process and what it has printed so far.
+	 */
+	private static class MaxSatRun {
+		
+		private final String command;
+		private final int seconds;
+		private final String prefix;
+		private final File tempDir;
+		
+		private Process process;
+		private SatSolverResult result;
+		private long cost = Long.MAX_VALUE;
+		private final List<int[]> solns = new ArrayList<int[]>();
+		private final StringBuilder output = new StringBuilder();
+		
+		private MaxSatRun(String command, int seconds, String prefix, File tempDir) {
+			this.command = command;
+			this.seconds = seconds;
+			this.prefix = prefix;
+			this.tempDir = tempDir;
+		}
+		
+		private void start() throws IOException {
+			List<String> args = new ArrayList<String>();
+			for (String arg : command.trim().split("\\s+"))
+				args.add(arg.replace(SECONDS, Integer.toString(seconds)));
+			
+			ProcessBuilder pb = new ProcessBuilder(args);
+			pb.redirectErrorStream(true);
+			process = pb.start();
+		}
+		
+		private void write(WeightedSatFormula sat) throws IOException {
 			sat.writeToStream(process.getOutputStream());
 			process.getOutputStream().close();
-			
-			List<int[]> solns = new ArrayList<int[]>();
+		}
+		
+		private void read(WeightedSatFormula sat, boolean verbose) throws IOException {
 			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-			StringBuilder sb = new StringBuilder();
 			String s = null;
 			while ((s = reader.readLine()) != null) {
 				if (verbose)
-					System.out.println(s);
+					System.out.println(prefix == null ? s : prefix + s);
 				
-				sb.append(s + "\n");
+				output.append(s + "\n");
 				if (s.startsWith("s OPTIMUM")) 
 					result = SatSolverResult.OPTIMAL;
 				
-				if (s.startsWith("v ")) {
-					if (!SatSolverResult.OPTIMAL.equals(result))
-						result = SatSolverResult.SATISFIABLE;
-					int[] soln = SatFormula.parse(s);
-					if (soln.length != sat.getNumProps()) {
-						System.err.println("Solution length = " + soln.length);
-						System.err.println("Expected length = " + sat.getNumProps());
-						System.err.println("Writing CNF to temp/loandra_error_dump.cnf");
-						sat.writeToFileRandomAccess(new File("temp/loandra_error_dump.cnf"));
-						result = SatSolverResult.ERROR;
+				if (s.startsWith("o ")) {
+					try {
+						cost = Long.parseLong(s.substring(2).trim());
+					} catch (NumberFormatException e) {
+						// not a cost line we understand
+					}
+				}
+				else if (s.startsWith("v ")) {
+					SatModel model = SatModel.parse(s, sat.getFormat() == WcnfFormat.MODERN); // modern solvers print a binary string
+					if (model != null) {
+						if (!SatSolverResult.OPTIMAL.equals(result))
+							result = SatSolverResult.SATISFIABLE;
+						int[] soln = model.toLiterals();
+						if (soln.length != sat.getNumProps()) {
+							System.err.println("Solution length = " + soln.length);
+							System.err.println("Expected length = " + sat.getNumProps());
+							tempDir.mkdirs();
+							File dumpFile = File.createTempFile("loandra_error_dump", ".cnf", tempDir);
+							System.err.println("Writing CNF to " + dumpFile);
+							sat.writeToFileRandomAccess(dumpFile);
+							result = SatSolverResult.ERROR;
+						}
+						solns.add(soln);
 					}
-					solns.add(soln);
 				} 
 				else if (s.startsWith("s UNSATISFIABLE"))
 					result = SatSolverResult.UNSATISFIABLE;
@@ -179,14 +389,6 @@ public class SatSolver {
 				else if (s.contains("ERROR"))
 					result = SatSolverResult.ERROR;	
 			}
-			
-			if (result == SatSolverResult.ERROR)
-				throw new RuntimeException(sb.toString());
-			
-			solutionSet = new InMemorySatSolutionSet(solns);
-		}
-		catch (IOException e) {
-			throw new RuntimeException(e);
 		}
 	}
 
@@ -34,18 +34,7 @@ public class PddlCmdLineOptions extends CmdLineOptions {
 
 		try {
 			pddlParser.parse(domainFile, problemFile);
-			String planFileName = planFile.getName();
-			if (planFileName.endsWith(".lama") || planFileName.endsWith(".ss") || planFileName.endsWith(".bfws")) {
-				pddlParser.parseFDPlan(planFile);
-			}
-			else if (planFileName.endsWith(".m")) {
-				pddlParser.parseMadagascarPlan(planFile);
-			}
-			else {
-				throw new IllegalArgumentException("Unknown plan type: " + planFile);
-			}
-			
-			
+			pddlParser.parsePlan(planFile);
 		}  catch (PddlParserException e) {
 			System.err.println(e.getMessage());
 			System.exit(1);
@@ -0,0 +1,87 @@
+package au.rmit.agtgrp.pplib.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A uniquely named working directory for the files of a single solver
+ * invocation, so that concurrent runs can share a parent directory (e.g., on
+ * tmpfs). The directory and its contents are deleted on close(), or when the
+ * JVM exits if close() is never called.
+ */
+public class ScratchDir implements Closeable {
+
+	// open directories, deleted by a single shutdown hook
+	private static final Set<ScratchDir> OPEN = new LinkedHashSet<ScratchDir>();
+	private static boolean hookAdded = false;
+
+	public static ScratchDir create(File parent, String prefix) {
+		try {
+			if (!parent.exists())
+				parent.mkdirs();
+			ScratchDir scratch = new ScratchDir(Files.createTempDirectory(parent.toPath(), prefix).toFile());
+			register(scratch);
+			return scratch;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static synchronized void register(ScratchDir scratch) {
+		if (!hookAdded) {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					for (ScratchDir open : getOpen())
+						open.close();
+				}
+			});
+			hookAdded = true;
+		}
+		OPEN.add(scratch);
+	}
+
+	private static synchronized void deregister(ScratchDir scratch) {
+		OPEN.remove(scratch);
+	}
+
+	private static synchronized List<ScratchDir> getOpen() {
+		return new ArrayList<ScratchDir>(OPEN);
+	}
+
+	private final File dir;
+	private boolean closed;
+
+	private ScratchDir(File dir) {
+		this.dir = dir;
+		this.closed = false;
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	public File getFile(String name) {
+		return new File(dir, name);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		deregister(this);
+		try {
+			FileUtils.recursivelyDelete(dir);
+		} catch (IOException e) {
+			System.err.println("Could not delete " + dir + ": " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+package au.rmit.agtgrp.pplib.utils.collections;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from long keys to int values, with no boxing
+ * or per-entry objects. Long.MIN_VALUE cannot be used as a key.
+ */
+public class LongIntHashMap {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	public LongIntHashMap(int initCapacity) {
+		int capacity = 16;
+		while (capacity < initCapacity * 2)
+			capacity <<= 1;
+		init(capacity);
+	}
+
+	private void init(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new int[capacity];
+		size = 0;
+		mask = capacity - 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean containsKey(long key) {
+		return keys[indexOf(key)] != EMPTY;
+	}
+
+	/**
+	 * Returns the value of the key, or missing if there is none.
+	 */
+	public int get(long key, int missing) {
+		int i = indexOf(key);
+		return keys[i] == EMPTY ? missing : values[i];
+	}
+
+	public void put(long key, int value) {
+		if (key == EMPTY)
+			throw new IllegalArgumentException("Invalid key: " + key);
+
+		int i = indexOf(key);
+		if (keys[i] == EMPTY) {
+			keys[i] = key;
+			size++;
+		}
+		values[i] = value;
+
+		if (size * 2 > keys.length)
+			rehash(keys.length * 2);
+	}
+
+	public void putAll(LongIntHashMap map) {
+		for (int i = 0; i < map.keys.length; i++) {
+			if (map.keys[i] != EMPTY)
+				put(map.keys[i], map.values[i]);
+		}
+	}
+
+	private int indexOf(long key) {
+		int i = hash(key) & mask;
+		while (keys[i] != EMPTY && keys[i] != key)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		init(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int j = indexOf(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+				size++;
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32));
+	}
+
+}
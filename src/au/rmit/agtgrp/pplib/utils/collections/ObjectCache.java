@@ -15,7 +15,11 @@ public class ObjectCache<T> {
 		cache = new WeakHashMap<T, WeakReference<? extends T>>(initCapacity);
 	}
 		
-	public <S extends T> S get(S obj) {
+	public synchronized void clear() {
+		cache.clear();
+	}
+
+	public synchronized <S extends T> S get(S obj) {
 		@SuppressWarnings("unchecked")
 		WeakReference<S> reference = (WeakReference<S>) cache.get(obj);
 		if (reference != null) {
@@ -30,7 +30,7 @@ public class Pair<F, S> implements Serializable {
 
 	private static final WeakHashMap<Pair<?,?>, WeakReference<? extends Pair<?,?>>> CACHE = new WeakHashMap<Pair<?,?>, WeakReference<? extends Pair<?,?>>>();
 
-	public static <T extends Pair<?,?>> T getCached(T pair) {
+	public static synchronized <T extends Pair<?,?>> T getCached(T pair) {
 		@SuppressWarnings("unchecked")
 		WeakReference<T> cached = (WeakReference<T>) CACHE.get(pair);
 		if (cached != null) {
@@ -91,6 +91,27 @@ public class UndirectedColouredGraph<V, C> {
 		return getAllLinks().size();
 	}
 
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + colours.hashCode();
+		result = prime * result + linksFrom.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		UndirectedColouredGraph<?, ?> other = (UndirectedColouredGraph<?, ?>) obj;
+		return colours.equals(other.colours) && linksFrom.equals(other.linksFrom);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
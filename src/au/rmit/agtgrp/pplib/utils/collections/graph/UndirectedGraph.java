@@ -36,6 +36,12 @@ public class UndirectedGraph<V> {
 		linksFrom = new HashMap<V, Set<V>>();
 	}
 
+	public UndirectedGraph(UndirectedGraph<V> graph) {
+		linksFrom = new HashMap<V, Set<V>>();
+		for (Map.Entry<V, Set<V>> entry : graph.linksFrom.entrySet())
+			linksFrom.put(entry.getKey(), new HashSet<V>(entry.getValue()));
+	}
+
 	public Set<V> getVertices() {
 		return linksFrom.keySet();
 	}
@@ -52,6 +58,16 @@ public class UndirectedGraph<V> {
 		linksFrom.get(dest).add(source);
 	}
 
+	public void removeVertex(V vertex) {
+		Set<V> links = linksFrom.remove(vertex);
+		if (links != null) {
+			for (V other : links) {
+				if (!other.equals(vertex))
+					linksFrom.get(other).remove(vertex);
+			}
+		}
+	}
+
 	public void removeEdge(V source, V dest) {
 		if (linksFrom.containsKey(source))
 			linksFrom.get(source).remove(dest);
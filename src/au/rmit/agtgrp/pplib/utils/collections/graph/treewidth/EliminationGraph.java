@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * MKTR - Minimal k-Treewidth Relaxation
+ *
+ * Copyright (C) 2018 
+ * Max Waters (max.waters@rmit.edu.au)
+ * RMIT University, Melbourne VIC 3000
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *******************************************************************************/
+package au.rmit.agtgrp.pplib.utils.collections.graph.treewidth;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import au.rmit.agtgrp.pplib.utils.collections.graph.UndirectedGraph;
+
+/**
+ * A copy of a graph whose vertices are eliminated one at a time, each
+ * elimination connecting the neighbours of the vertex. The width of the
+ * elimination ordering, i.e., the most neighbours any vertex has when it is
+ * eliminated, is an upper bound on the treewidth of the graph.
+ */
+class EliminationGraph<V> {
+
+	private final Map<V, Set<V>> linksFrom;
+	private final List<V> ordering;
+	private int width;
+
+	EliminationGraph(UndirectedGraph<V> graph) {
+		linksFrom = new HashMap<V, Set<V>>();
+		for (V vertex : graph.getVertices())
+			linksFrom.put(vertex, new HashSet<V>(graph.getLinksFrom(vertex)));
+		ordering = new ArrayList<V>();
+		width = 0;
+	}
+
+	List<V> getOrdering() {
+		return ordering;
+	}
+
+	int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Eliminates the vertices of order which are in the graph, in order,
+	 * stopping before the first which would make the width greater than max.
+	 * Returns the number eliminated.
+	 */
+	int eliminate(List<V> order, int max) {
+		int n = 0;
+		for (V vertex : order) {
+			Set<V> links = linksFrom.get(vertex);
+			if (links == null)
+				continue;
+			if (links.size() > max)
+				break;
+			eliminate(vertex);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Eliminates the remaining vertices, each time choosing the vertex whose
+	 * elimination adds the fewest edges. Stops and returns false if the width
+	 * becomes greater than max.
+	 */
+	boolean eliminateGreedily(int max) throws InterruptedException {
+		Map<V, Integer> fillIn = new HashMap<V, Integer>();
+		for (V vertex : linksFrom.keySet())
+			fillIn.put(vertex, getFillIn(vertex));
+
+		while (!linksFrom.isEmpty()) {
+			if (Thread.interrupted()) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedException();
+			}
+
+			V best = null;
+			int bestFillIn = Integer.MAX_VALUE;
+			for (Map.Entry<V, Integer> entry : fillIn.entrySet()) {
+				int f = entry.getValue();
+				if (f < bestFillIn || (f == bestFillIn && linksFrom.get(entry.getKey()).size() < linksFrom.get(best).size())) {
+					best = entry.getKey();
+					bestFillIn = f;
+				}
+			}
+
+			if (linksFrom.get(best).size() > max)
+				return false;
+
+			// only the fill-in of the neighbours and their neighbours can change
+			Set<V> affected = new HashSet<V>();
+			for (V link : eliminate(best)) {
+				affected.add(link);
+				affected.addAll(linksFrom.get(link));
+			}
+			fillIn.remove(best);
+			for (V vertex : affected)
+				fillIn.put(vertex, getFillIn(vertex));
+		}
+		return true;
+	}
+
+	private Set<V> eliminate(V vertex) {
+		Set<V> links = linksFrom.remove(vertex);
+		width = Math.max(width, links.size());
+		ordering.add(vertex);
+		for (V link : links) {
+			Set<V> linkLinks = linksFrom.get(link);
+			linkLinks.remove(vertex);
+			for (V other : links) {
+				if (!other.equals(link))
+					linkLinks.add(other);
+			}
+		}
+		return links;
+	}
+
+	private int getFillIn(V vertex) {
+		List<V> links = new ArrayList<V>(linksFrom.get(vertex));
+		int n = 0;
+		for (int i = 0; i < links.size(); i++) {
+			Set<V> linkLinks = linksFrom.get(links.get(i));
+			for (int j = i + 1; j < links.size(); j++) {
+				if (!linkLinks.contains(links.get(j)))
+					n++;
+			}
+		}
+		return n;
+	}
+
+}
@@ -21,7 +21,10 @@
 package au.rmit.agtgrp.pplib.utils.collections.graph.treewidth;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import au.rmit.agtgrp.pplib.utils.collections.Pair;
 import au.rmit.agtgrp.pplib.utils.collections.graph.UndirectedGraph;
@@ -37,11 +40,26 @@ public class TreewidthCalculator {
 	private static final String VERTEX_LABEL_PREFIX = "v";
 
 	private final TreewidthExactInterface twExact;
+	private final History history;
 
 	private boolean cancelled;
 	
 	public TreewidthCalculator() {
+		this(new History());
+	}
+
+	/**
+	 * Creates a calculator which shares the orderings and graphs kept by
+	 * other, for testing graphs which differ from the graphs other tested by
+	 * a few edges. Each calculator is cancelled separately.
+	 */
+	public TreewidthCalculator(TreewidthCalculator other) {
+		this(other.history);
+	}
+
+	private TreewidthCalculator(History history) {
 		twExact = new TreewidthExactInterface();
+		this.history = history;
 	}
 
 	public <V> int calculateExact(UndirectedGraph<V> graph) throws InterruptedException {
@@ -75,16 +93,35 @@ public class TreewidthCalculator {
 		if (graph.getSize() == 0)
 			return 1 > maxwidth;
 
+		// repair the last ordering of width <= max: keep it until a vertex has too many links, then eliminate greedily
+		@SuppressWarnings("unchecked")
+		List<V> ordering = (List<V>) history.getOrdering();
+		if (ordering != null) {
+			EliminationGraph<V> elim = new EliminationGraph<V>(graph);
+			elim.eliminate(ordering, maxwidth);
+			if (elim.eliminateGreedily(maxwidth)) {
+				history.setOrdering(elim.getOrdering());
+				return false;
+			}
+		}
+
+		// treewidth cannot decrease when edges are added
+		if (history.containsWiderGraph(graph, maxwidth))
+			return true;
+
 		// convert graph type
 		NGraph<InputData> ngraph = convertGraphType(graph);
 
 		int lb = getLowerBound(ngraph);
 		if (lb > maxwidth) {
+			history.setWiderGraph(graph, maxwidth);
 			return true;
 		}
 
-		int upperbound = getUpperBound(ngraph);
-		if (upperbound <= maxwidth) {
+		// greedy fill-in, keeping the ordering
+		EliminationGraph<V> elim = new EliminationGraph<V>(graph);
+		if (elim.eliminateGreedily(maxwidth)) {
+			history.setOrdering(elim.getOrdering());
 			return false;
 		}
 
@@ -97,6 +134,8 @@ public class TreewidthCalculator {
 		twExact.calculateLowerbound(gr.format(), maxwidth);
 
 		int lowerbound = twExact.getLowerbound();
+		if (lowerbound >= maxwidth)
+			history.setWiderGraph(graph, maxwidth);
 		return lowerbound >= maxwidth;
 
 	}
@@ -175,4 +214,47 @@ public class TreewidthCalculator {
 
 		return g;
 	}
+
+	// kept between calls, and shared by calculators of graphs which differ slightly
+	private static class History {
+
+		private List<?> ordering;
+
+		private Map<Object, Set<Object>> widerGraph;
+		private int widerWidth;
+
+		synchronized List<?> getOrdering() {
+			return ordering;
+		}
+
+		synchronized void setOrdering(List<?> ordering) {
+			this.ordering = ordering;
+		}
+
+		// true if a graph with treewidth > maxwidth is a subgraph of graph
+		synchronized <V> boolean containsWiderGraph(UndirectedGraph<V> graph, int maxwidth) {
+			if (widerGraph == null || widerWidth < maxwidth)
+				return false;
+
+			@SuppressWarnings("unchecked")
+			UndirectedGraph<Object> g = (UndirectedGraph<Object>) graph;
+			for (Map.Entry<Object, Set<Object>> entry : widerGraph.entrySet()) {
+				for (Object link : entry.getValue()) {
+					if (!g.containsEdge(entry.getKey(), link))
+						return false;
+				}
+			}
+			return true;
+		}
+
+		synchronized <V> void setWiderGraph(UndirectedGraph<V> graph, int maxwidth) {
+			widerGraph = new HashMap<Object, Set<Object>>();
+			for (V vertex : graph.getVertices()) {
+				if (!graph.getLinksFrom(vertex).isEmpty())
+					widerGraph.put(vertex, new HashSet<Object>(graph.getLinksFrom(vertex)));
+			}
+			widerWidth = maxwidth;
+		}
+	}
+
 }
@@ -0,0 +1,90 @@
+package au.rmit.agtgrp.pplib.pp.mrr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import au.rmit.agtgrp.pplib.fol.symbol.Type;
+import au.rmit.agtgrp.pplib.pp.mrr.MrrBatchMain.MrrJob;
+import au.rmit.agtgrp.pplib.utils.FileUtils;
+
+public class MrrBatchMainTest {
+
+	// both domains declare truck, under different supertypes
+	private static final String DOMAIN =
+			"(define (domain %s)\n" +
+			" (:requirements :strips :typing)\n" +
+			" (:types %s place - object truck - %s)\n" +
+			" (:predicates (at ?t - truck ?p - place))\n" +
+			" (:action drive\n" +
+			"  :parameters (?t - truck ?from - place ?to - place)\n" +
+			"  :precondition (at ?t ?from)\n" +
+			"  :effect (and (at ?t ?to) (not (at ?t ?from)))))\n";
+
+	private static final String PROBLEM =
+			"(define (problem p-%s)\n" +
+			" (:domain %s)\n" +
+			" (:objects t1 - truck l1 l2 - place)\n" +
+			" (:init (at t1 l1))\n" +
+			" (:goal (at t1 l2)))\n";
+
+	private static final String PLAN = "(drive t1 l1 l2)\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		MrrBatchMain.clearDomainState();
+	}
+
+	@Test
+	public void clearDomainStateAllowsConflictingTypes() {
+		Type truck = new Type("truck");
+		truck.setSupertype(new Type("vehicle"));
+
+		MrrBatchMain.clearDomainState();
+
+		truck = new Type("truck");
+		truck.setSupertype(new Type("machine"));
+		assertTrue(truck.hasSupertype(new Type("machine")));
+		assertTrue(!truck.hasSupertype(new Type("vehicle")));
+		assertNotNull(Type.ANYTHING_TYPE.getImmediateSubtypes());
+	}
+
+	@Test
+	public void conflictingDomainsAreBothLoaded() throws IOException {
+		List<MrrJob> vehicleJobs = load("vehicle", 0);
+		assertNotNull(vehicleJobs.get(0).plan);
+		assertEquals(new Type("vehicle"), new Type("truck").getImmediateSupertype());
+
+		List<MrrJob> machineJobs = load("machine", 1);
+		assertNotNull(machineJobs.get(0).plan);
+		assertEquals(new Type("machine"), new Type("truck").getImmediateSupertype());
+		assertEquals(1, machineJobs.get(0).id);
+	}
+
+	private List<MrrJob> load(String supertype, int firstId) throws IOException {
+		File domainFile = folder.newFile(supertype + "-domain.pddl");
+		FileUtils.writeFile(domainFile, String.format(DOMAIN, supertype, supertype, supertype));
+		File problemFile = folder.newFile(supertype + "-problem.pddl");
+		FileUtils.writeFile(problemFile, String.format(PROBLEM, supertype, supertype));
+		File planFile = folder.newFile(supertype + "-problem.pddl.bfws");
+		FileUtils.writeFile(planFile, PLAN);
+
+		List<File[]> problemsAndPlans = new ArrayList<File[]>();
+		problemsAndPlans.add(new File[] {problemFile, planFile});
+		return MrrBatchMain.loadDomain(domainFile, problemsAndPlans, firstId);
+	}
+
+}
@@ -0,0 +1,93 @@
+package au.rmit.agtgrp.pplib.sat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class SatModelTest {
+
+	@Test
+	public void decimalModel() {
+		SatModel model = SatModel.parse("v 1 -2 3 0");
+		assertArrayEquals(new int[] {1, -2, 3}, model.toLiterals());
+	}
+
+	@Test
+	public void decimalContinuationLines() throws IOException {
+		// a continuation line with a single 0/1 token is still decimal
+		String output = "c comment\n" +
+				"v 1 -2 3 -4 -5 -6 -7 -8 -9\n" +
+				"v 10\n" +
+				"v -11 0\n";
+		SatModel model = parse(output, false);
+		assertEquals(11, model.getNumProps());
+		assertEquals(10, model.nextTrueProp(4));
+		assertEquals(-1, model.nextTrueProp(11));
+	}
+
+	@Test
+	public void binaryModel() {
+		SatModel model = SatModel.parse("v 0101", true);
+		assertArrayEquals(new int[] {-1, 2, -3, 4}, model.toLiterals());
+	}
+
+	@Test
+	public void binaryContinuationLines() throws IOException {
+		SatModel model = parse("v 01\nv 10\n", true);
+		assertArrayEquals(new int[] {-1, 2, 3, -4}, model.toLiterals());
+	}
+
+	@Test
+	public void lastModelIsReturned() throws IOException {
+		String output = "o 5\n" +
+				"v 1 -2 0\n" +
+				"o 3\n" +
+				"v -1 2 0\n" +
+				"s OPTIMUM FOUND\n";
+		assertArrayEquals(new int[] {-1, 2}, parse(output, false).toLiterals());
+	}
+
+	@Test
+	public void nonModelLinesAreSkipped() throws IOException {
+		String output = "version 2.0\n" +
+				"v\n" +
+				"vars: 3\n" +
+				"v 1 -2 0\n" +
+				"c v 3 0\n" +
+				"v not a model\n" +
+				"v 1-2 0\n" +
+				"s SATISFIABLE\n";
+		assertArrayEquals(new int[] {1, -2}, parse(output, false).toLiterals());
+	}
+
+	@Test
+	public void decimalLineIsSkippedInBinaryMode() throws IOException {
+		String output = "v 0110\n" +
+				"o 1\n" +
+				"v 1 -2 0\n";
+		assertArrayEquals(new int[] {-1, 2, 3, -4}, parse(output, true).toLiterals());
+	}
+
+	@Test
+	public void windowsLineEndings() throws IOException {
+		assertArrayEquals(new int[] {-1, 2}, parse("s SATISFIABLE\r\nv -1 2 0\r\n", false).toLiterals());
+		assertArrayEquals(new int[] {1, -2}, parse("v 10\r\n", true).toLiterals());
+	}
+
+	@Test
+	public void noModel() throws IOException {
+		assertNull(parse("s UNSATISFIABLE\n", false));
+		assertNull(SatModel.parse("v 12", true));
+	}
+
+	private static SatModel parse(String output, boolean binary) throws IOException {
+		return SatModel.parse(new ByteArrayInputStream(output.getBytes(StandardCharsets.US_ASCII)), binary);
+	}
+
+}